@@ -21,6 +21,12 @@ java {
     sourceCompatibility = JavaVersion.VERSION_23
 }
 
+tasks.jar {
+    manifest {
+        attributes("Implementation-Version" to project.version)
+    }
+}
+
 tasks.test {
     useJUnitPlatform()
 }
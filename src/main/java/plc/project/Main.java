@@ -2,6 +2,7 @@ package plc.project;
 
 import plc.project.analyzer.AnalyzeException;
 import plc.project.analyzer.Analyzer;
+import plc.project.cache.SourceCache;
 import plc.project.evaluator.Environment;
 import plc.project.evaluator.EvaluateException;
 import plc.project.evaluator.Evaluator;
@@ -9,22 +10,121 @@ import plc.project.evaluator.RuntimeValue;
 import plc.project.evaluator.Scope;
 import plc.project.lexer.LexException;
 import plc.project.lexer.Lexer;
+import plc.project.lexer.LineIndex;
 import plc.project.lexer.Token;
+import plc.project.lexer.TokenBuffer;
 import plc.project.parser.Ast;
 import plc.project.parser.ParseException;
 import plc.project.parser.Parser;
-
+import plc.project.parser.Recognizer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Supplier;
 import java.util.regex.Pattern;
 
 public final class Main {
 
+    /**
+     * Runs the REPL, or with an argument of {@code -} (or when standard input
+     * is not a terminal) executes a script piped to standard input with
+     * {@link #pipeline}. With {@code check} followed by files, only checks the
+     * syntax of the files with {@link #check}, and with {@code run} followed
+     * by files, executes them with {@link #run}.
+     */
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("check")) {
+            var paths = Arrays.stream(args, 1, args.length).map(Path::of).toList();
+            System.exit(check(paths, ForkJoinPool.commonPool()) ? 0 : 1);
+        }
+        if (args.length > 0 && args[0].equals("run")) {
+            var paths = Arrays.stream(args, 1, args.length).map(Path::of).toList();
+            System.exit(run(paths, new SourceCache()) ? 0 : 1);
+        }
+        //since JDK 22 there is a console even when input is redirected, so check it is a terminal
+        var console = System.console();
+        if ((args.length > 0 && args[0].equals("-")) || console == null || !console.isTerminal()) {
+            System.exit(pipeline(new InputStreamReader(System.in, StandardCharsets.UTF_8)) ? 0 : 1);
+        }
         repl(Main::analyzer); //edit for manual testing
     }
 
+    /**
+     * Executes a script one top-level statement at a time: each statement is
+     * evaluated as soon as it has been parsed, and is then dropped, so scripts
+     * of any length (or which never end) run in constant memory. There are no
+     * prompts, and the script stops at the first error, which is reported to
+     * standard error with the offset it occurred at (the input is not kept to
+     * find the line). Returns whether the script completed.
+     */
+    private static boolean pipeline(Reader input) {
+        var parser = new Parser(new Lexer(new BufferedReader(input))).locating();
+        var evaluator = new Evaluator(new Scope(Environment.scope()));
+        while (true) {
+            try {
+                var statement = parser.parseNextStmt();
+                if (statement == null) {
+                    return true;
+                }
+                evaluator.visit(new Ast.Source(List.of(statement))); //checks for a top-level RETURN
+            } catch (ParseException | EvaluateException e) {
+                var offset = switch (e) {
+                    case ParseException p -> p.offset();
+                    case EvaluateException v when v.ast() != null -> parser.offset(v.ast());
+                    default -> -1;
+                };
+                System.err.println(e.getClass().getSimpleName() + (offset >= 0 ? " at offset " + offset : "") + ": " + e.getMessage());
+                return false;
+            } catch (UncheckedIOException e) {
+                System.err.println("Failed to read input: " + e.getCause().getMessage());
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Executes script files in order, each in a fresh scope, parsing them
+     * through the cache so that running an unchanged script again skips
+     * lexing and parsing. Errors are reported to standard error as
+     * {@code path:line:column: message}, though cached trees do not record
+     * offsets, so evaluation errors have no location. Stops at the first
+     * error and returns whether every script completed.
+     */
+    private static boolean run(List<Path> paths, SourceCache cache) {
+        for (var path : paths) {
+            String input;
+            try {
+                input = Files.readString(path);
+            } catch (IOException e) {
+                System.err.println(path + ": " + e);
+                return false;
+            }
+            try {
+                new Evaluator(new Scope(Environment.scope())).visit(cache.parse(input));
+            } catch (LexException | ParseException | EvaluateException e) {
+                var offset = switch (e) {
+                    case LexException l -> l.offset();
+                    case ParseException p -> p.offset();
+                    default -> -1;
+                };
+                System.err.println(path + (offset >= 0 ? ":" + LineIndex.of(input).format(offset) : "") + ": " + e.getMessage());
+                return false;
+            }
+        }
+        return true;
+    }
+
     private static void lexer(String input) throws LexException {
         var tokens = new Lexer(input).lex();
         if (tokens.isEmpty()) {
@@ -36,14 +136,21 @@ public final class Main {
     }
 
     private static void parser(String input) throws LexException, ParseException {
-        var ast = new Parser(new Lexer(input).lex()).parseSource(); //edit for manual testing
+        var ast = parse(input); //edit for manual testing
         System.out.println(ast);
     }
 
+    private static Parser parser = new Parser(List.of()); //last parser used, to locate evaluation errors
+
+    private static Ast.Source parse(String input) throws LexException, ParseException {
+        parser = new Parser(TokenBuffer.lex(new Lexer(input))).locating();
+        return parser.parseSource();
+    }
+
     private static final Evaluator EVALUATOR = new Evaluator(new Scope(Environment.scope())); //global to retain state changes
 
     private static void evaluator(String input) throws LexException, ParseException, EvaluateException {
-        var ast = new Parser(new Lexer(input).lex()).parseSource(); //edit for manual testing
+        var ast = parse(input); //edit for manual testing
         var value = EVALUATOR.visit(ast);
         System.out.println(value.print());
     }
@@ -51,13 +158,47 @@ public final class Main {
     private static final Analyzer ANALYZER = new Analyzer(new plc.project.analyzer.Scope(plc.project.analyzer.Environment.scope()));
 
     private static void analyzer(String input) throws LexException, ParseException, EvaluateException, AnalyzeException {
-        var ast = new Parser(new Lexer(input).lex()).parseSource(); //edit for manual testing
+        var ast = parse(input); //edit for manual testing
         var ir = ANALYZER.visit(ast); //Warning: exceptions may modify scope!
         System.out.println(ir);
         var value = EVALUATOR.visit(ast);
         System.out.println(value.print());
     }
 
+    /**
+     * Checks the syntax of the files concurrently on the pool, without
+     * building ASTs (see {@link Recognizer}). Every syntax error is printed as
+     * {@code path:line:column: message}, in the order the files were given,
+     * and the result is whether all files are well-formed.
+     */
+    private static boolean check(List<Path> paths, ForkJoinPool pool) {
+        var tasks = paths.stream().map(path -> pool.submit(() -> check(path))).toList();
+        var valid = true;
+        for (var task : tasks) {
+            var diagnostics = task.join();
+            diagnostics.forEach(System.out::println);
+            valid &= diagnostics.isEmpty();
+        }
+        return valid;
+    }
+
+    private static List<String> check(Path path) {
+        ByteBuffer input;
+        try {
+            input = ByteBuffer.wrap(Files.readAllBytes(path)); //scripts are small, so reading beats mapping
+        } catch (IOException e) {
+            return List.of(path + ": " + e);
+        }
+        var errors = new Recognizer(new Lexer(input)).check();
+        if (errors.isEmpty()) {
+            return List.of();
+        }
+        var lines = LineIndex.of(input);
+        return errors.stream()
+            .map(e -> path + (e.offset() >= 0 ? ":" + lines.format(e.offset()) : "") + ": " + e.getMessage())
+            .toList();
+    }
+
     private interface ReplBody {
         void invoke(String input) throws LexException, ParseException, EvaluateException, AnalyzeException;
     }
@@ -68,13 +209,27 @@ public final class Main {
             try {
                 body.invoke(input);
             } catch (LexException | ParseException | AnalyzeException | EvaluateException e) {
-                System.out.println(e.getClass().getSimpleName() + ": " + e.getMessage());
+                System.out.println(e.getClass().getSimpleName() + location(e, input) + ": " + e.getMessage());
             } catch (RuntimeException e) {
                 e.printStackTrace();
             }
         }
     }
 
+    /**
+     * Returns the line and column the exception refers to, if known. The
+     * input is only indexed by line here, once an error is reported.
+     */
+    private static String location(Exception exception, String input) {
+        var offset = switch (exception) {
+            case LexException e -> e.offset();
+            case ParseException e -> e.offset();
+            case EvaluateException e when e.ast() != null -> parser.offset(e.ast());
+            default -> -1;
+        };
+        return offset >= 0 ? " at " + LineIndex.of(input).format(offset) : "";
+    }
+
     private static final Scanner SCANNER = new Scanner(System.in);
 
     private static String readInput() {
@@ -1,5 +1,7 @@
 package plc.project.analyzer;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import plc.project.parser.Ast;
 
 import java.math.BigDecimal;
@@ -10,6 +12,8 @@ import java.util.Optional;
 
 public final class Analyzer implements Ast.Visitor<Ir, AnalyzeException> {
 
+    private static final Logger LOGGER = LogManager.getLogger();
+
     private Scope scope;
 
     public Analyzer(Scope scope) {
@@ -62,7 +66,7 @@ public final class Analyzer implements Ast.Visitor<Ir, AnalyzeException> {
         for (Optional<String> optionalType : ast.parameterTypes()) {
             String typeName = optionalType.orElseThrow(() -> new AnalyzeException("no param type"));
             Type retType = Environment.TYPES.get(typeName);
-            System.out.println(retType); //TESTING RETTYPE REMOVE
+            LOGGER.trace("Parameter type {} resolved to {}", typeName, retType);
             if (retType == null) {
                 throw new AnalyzeException("parameter is null!");
             }
@@ -397,4 +401,4 @@ public final class Analyzer implements Ast.Visitor<Ir, AnalyzeException> {
         //exception if no matches
         throw new AnalyzeException("no matches");
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,258 @@
+package plc.project.cache;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import plc.project.analyzer.AnalyzeException;
+import plc.project.analyzer.Analyzer;
+import plc.project.analyzer.Environment;
+import plc.project.analyzer.Ir;
+import plc.project.analyzer.Scope;
+import plc.project.codec.TreeReader;
+import plc.project.codec.TreeWriter;
+import plc.project.lexer.LexException;
+import plc.project.lexer.Lexer;
+import plc.project.lexer.TokenBuffer;
+import plc.project.parser.Ast;
+import plc.project.parser.ParseException;
+import plc.project.parser.Parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * An on-disk cache of parsed and analyzed sources, so that running the same
+ * script again skips lexing, parsing and analysis.
+ *
+ * <p>Entries are content addressed: each is a file named by the SHA-256 of the
+ * compiler {@link #VERSION} and the source text, holding the {@link Ast.Source} and,
+ * once analysis has succeeded, the {@link Ir.Source}. An entry records the
+ * format and compiler version it was written with and ends with a CRC-32 of
+ * its contents. Any entry which is stale, truncated or otherwise corrupt is
+ * deleted when read and rebuilt from the source.
+ *
+ * <p>The trees themselves are stored with {@link TreeWriter}.
+ *
+ * <p>The cache is best effort: failures to read or write entries are logged
+ * and otherwise only cost the work the cache would have saved. Entries are
+ * written to a temporary file and moved into place, so concurrent users of a
+ * directory never see partial entries.
+ */
+public final class SourceCache {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final int MAGIC = 0x504C4343; //PLCC
+    private static final int FORMAT = 2;
+
+    /**
+     * The compiler version entries are keyed by: the version from the jar
+     * manifest when packaged, and a hash of the compiled classes, so that
+     * entries written by any other build of the compiler are stale.
+     */
+    public static final String VERSION = Objects.requireNonNullElse(SourceCache.class.getPackage().getImplementationVersion(), "dev") + "+" + build();
+
+    private final Path directory;
+
+    /**
+     * Returns a hash of the classes this was loaded with: the jar, or every
+     * class file in the directory. If they cannot be read, a random value is
+     * returned, so no entries from other runs are used.
+     */
+    private static String build() {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            var location = Path.of(SourceCache.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            if (Files.isDirectory(location)) {
+                try (var files = Files.walk(location)) {
+                    for (var file : files.filter(file -> file.toString().endsWith(".class")).sorted().toList()) {
+                        digest.update((location.relativize(file) + "\0").getBytes(StandardCharsets.UTF_8));
+                        digest.update(Files.readAllBytes(file));
+                    }
+                }
+            } else {
+                digest.update(Files.readAllBytes(location));
+            }
+            return HexFormat.of().formatHex(digest.digest(), 0, 8);
+        } catch (Exception exception) {
+            LOGGER.warn("Failed to hash the compiler's classes, so cache entries will not be reused: {}", exception.toString());
+            return UUID.randomUUID().toString();
+        }
+    }
+
+    public SourceCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Creates a cache in the directory given by the {@code plc.cache.dir}
+     * system property, or {@code plc-cache} under the temporary directory.
+     */
+    public SourceCache() {
+        this(Path.of(System.getProperty("plc.cache.dir", Path.of(System.getProperty("java.io.tmpdir"), "plc-cache").toString())));
+    }
+
+    public Path directory() {
+        return directory;
+    }
+
+    public Ast.Source parse(String input) throws LexException, ParseException {
+        var key = key(input);
+        var entry = read(key);
+        if (entry != null) {
+            return entry.ast();
+        }
+        var ast = new Parser(TokenBuffer.lex(new Lexer(input))).parseSource();
+        write(key, new Entry(ast, null));
+        return ast;
+    }
+
+    /**
+     * Returns the analyzed source, as analyzed in a fresh scope of the
+     * standard {@link Environment}. Only successful analyses are cached, so
+     * an {@link AnalyzeException} is thrown again on each call.
+     */
+    public Ir.Source analyze(String input) throws LexException, ParseException, AnalyzeException {
+        var key = key(input);
+        var entry = read(key);
+        if (entry != null && entry.ir() != null) {
+            return entry.ir();
+        }
+        var ast = entry != null ? entry.ast() : new Parser(TokenBuffer.lex(new Lexer(input))).parseSource();
+        Ir.Source ir;
+        try {
+            ir = new Analyzer(new Scope(Environment.scope())).visit(ast);
+        } catch (AnalyzeException exception) {
+            if (entry == null) {
+                write(key, new Entry(ast, null));
+            }
+            throw exception;
+        }
+        write(key, new Entry(ast, ir));
+        return ir;
+    }
+
+    private record Entry(Ast.Source ast, Ir.@Nullable Source ir) {}
+
+    private record Key(String name, byte[] digest) {}
+
+    private static Key key(String input) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            digest.update((VERSION + "\0").getBytes(StandardCharsets.UTF_8));
+            digest.update(input.getBytes(StandardCharsets.UTF_8));
+            var bytes = digest.digest();
+            return new Key(HexFormat.of().formatHex(bytes), bytes);
+        } catch (NoSuchAlgorithmException exception) {
+            throw new AssertionError(exception); //required of every platform
+        }
+    }
+
+    private Path path(Key key) {
+        return directory.resolve(key.name() + ".plcc");
+    }
+
+    /**
+     * Reads the entry for the key, or returns null if there is none. The
+     * checksum is verified before anything is decoded, and an unusable entry
+     * is deleted.
+     */
+    private @Nullable Entry read(Key key) {
+        var path = path(key);
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(path);
+        } catch (NoSuchFileException exception) {
+            LOGGER.debug("Cache miss {}", key.name());
+            return null;
+        } catch (IOException exception) {
+            LOGGER.warn("Failed to read cache entry {}: {}", path, exception.toString());
+            return null;
+        }
+        try {
+            if (bytes.length < Long.BYTES) {
+                throw new IOException("Truncated entry.");
+            }
+            var checksum = new CRC32();
+            checksum.update(bytes, 0, bytes.length - Long.BYTES);
+            if (checksum.getValue() != ByteBuffer.wrap(bytes, bytes.length - Long.BYTES, Long.BYTES).getLong()) {
+                throw new IOException("Checksum mismatch.");
+            }
+            var in = new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - Long.BYTES));
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT || !in.readUTF().equals(VERSION)) {
+                throw new IOException("Stale entry.");
+            }
+            var digest = new byte[key.digest().length];
+            in.readFully(digest);
+            if (!Arrays.equals(digest, key.digest())) {
+                throw new IOException("Key mismatch.");
+            }
+            var reader = new TreeReader(in);
+            var ast = reader.readAst();
+            var ir = reader.hasNext() ? reader.readIr() : null;
+            if (reader.hasNext()) {
+                throw new IOException("Malformed entry.");
+            }
+            LOGGER.debug("Cache hit {}", key.name());
+            return new Entry(ast, ir);
+        } catch (IOException | RuntimeException exception) {
+            LOGGER.warn("Evicting cache entry {}: {}", path, exception.toString());
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                LOGGER.warn("Failed to evict cache entry {}: {}", path, e.toString());
+            }
+            return null;
+        }
+    }
+
+    private void write(Key key, Entry entry) {
+        Path temporary = null;
+        try {
+            Files.createDirectories(directory);
+            temporary = Files.createTempFile(directory, key.name(), ".tmp");
+            var checksum = new CRC32();
+            try (var out = new DataOutputStream(new CheckedOutputStream(Files.newOutputStream(temporary), checksum))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT);
+                out.writeUTF(VERSION);
+                out.write(key.digest());
+                var writer = new TreeWriter(out);
+                writer.write(entry.ast());
+                if (entry.ir() != null) {
+                    writer.write(entry.ir());
+                }
+                writer.flush();
+                out.writeLong(checksum.getValue()); //the checksum of everything before it
+            }
+            Files.move(temporary, path(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOGGER.debug("Cached {}", key.name());
+        } catch (IOException | RuntimeException exception) {
+            LOGGER.warn("Failed to write cache entry {}: {}", key.name(), exception.toString());
+            if (temporary != null) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException e) {
+                    LOGGER.warn("Failed to delete {}: {}", temporary, e.toString());
+                }
+            }
+        }
+    }
+
+}
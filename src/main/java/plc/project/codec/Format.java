@@ -0,0 +1,41 @@
+package plc.project.codec;
+
+/**
+ * Constants of the binary tree format read and written by {@link TreeReader}
+ * and {@link TreeWriter}.
+ *
+ * <p>A stream starts with {@link #MAGIC} and the format {@link #VERSION}, and
+ * is followed by any number of trees. Each node is written in pre-order as a
+ * tag byte followed by its fields, with counts and indices as unsigned
+ * varints. Absent nodes, strings, types and values are written as
+ * {@link #NULL}, which is also how an empty {@code Optional} is stored.
+ */
+final class Format {
+
+    static final int MAGIC = 0x504C4354; //PLCT
+    static final int VERSION = 1;
+
+    static final int NULL = 0;
+
+    //tree tags, preceding each tree in a stream
+    static final int AST = 1, IR = 2;
+
+    //node tags, shared by Ast and Ir where the node exists in both
+    static final int SOURCE = 1, LET = 2, DEF = 3, IF = 4, FOR = 5, RETURN = 6, EXPRESSION = 7,
+        ASSIGNMENT = 8, ASSIGNMENT_PROPERTY = 9, LITERAL = 10, GROUP = 11, BINARY = 12, VARIABLE = 13,
+        PROPERTY = 14, CALL = 15, METHOD = 16, OBJECT_EXPR = 17;
+
+    //literal tags; numbers whose unscaled value fits in a long are stored as
+    //a zigzag varint, and otherwise as two's-complement bytes
+    static final int TRUE = 1, FALSE = 2, INTEGER = 3, LONG_INTEGER = 4, DECIMAL = 5, LONG_DECIMAL = 6,
+        CHARACTER = 7, STRING = 8;
+
+    //type tags; an object is written in full once, then referenced by index
+    static final int PRIMITIVE = 1, FUNCTION = 2, OBJECT = 3, OBJECT_REFERENCE = 4;
+
+    //string codes; otherwise the code is 2 plus an index into the strings already read
+    static final int NEW_STRING = 1, STRING_REFERENCE = 2;
+
+    private Format() {}
+
+}
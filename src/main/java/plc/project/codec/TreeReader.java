@@ -0,0 +1,338 @@
+package plc.project.codec;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import plc.project.analyzer.Environment;
+import plc.project.analyzer.Ir;
+import plc.project.analyzer.Scope;
+import plc.project.analyzer.Type;
+import plc.project.parser.Ast;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static plc.project.codec.Format.*;
+
+/**
+ * Reads trees written by {@link TreeWriter}. The stream is decoded as it is
+ * read, through a fixed buffer owned by the reader, so a tree is built
+ * directly from the bytes without reading the whole stream first. Names and
+ * other strings are decoded once, and shared by every node using them.
+ *
+ * <p>Streams of a newer {@link TreeWriter#VERSION} are rejected. Malformed
+ * input results in an {@link IOException}, or an {@link EOFException} if the
+ * stream ends early; lengths are never trusted to allocate ahead of the data
+ * actually read.
+ */
+public final class TreeReader implements Closeable {
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[1 << 16];
+    private int position = 0;
+    private int limit = 0;
+    private final List<String> strings = new ArrayList<>();
+    private final List<Type.Object> objects = new ArrayList<>();
+
+    public TreeReader(InputStream in) throws IOException {
+        this.in = in;
+        var magic = 0;
+        for (int i = 0; i < 4; i++) {
+            magic = magic << 8 | readByte();
+        }
+        if (magic != MAGIC) {
+            throw new IOException("Not a tree stream.");
+        }
+        var version = readVarint();
+        if (version > VERSION) {
+            throw new IOException("Unsupported format version " + version + ".");
+        }
+    }
+
+    /**
+     * Returns true if another tree follows, or false at the end of the stream.
+     */
+    public boolean hasNext() throws IOException {
+        return fill(1);
+    }
+
+    public Ast.Source readAst() throws IOException {
+        if (readByte() != AST) {
+            throw new IOException("Expected an AST.");
+        }
+        if (!(readAstNode() instanceof Ast.Source source)) {
+            throw new IOException("Expected an AST source.");
+        }
+        return source;
+    }
+
+    public Ir.Source readIr() throws IOException {
+        if (readByte() != IR) {
+            throw new IOException("Expected an IR.");
+        }
+        if (!(readIrNode() instanceof Ir.Source source)) {
+            throw new IOException("Expected an IR source.");
+        }
+        return source;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends @Nullable Ast> T readAstNode() throws IOException {
+        var tag = readByte();
+        return (T) switch (tag) {
+            case NULL -> null;
+            case SOURCE -> new Ast.Source(this.<Ast.Stmt>readAstNodes());
+            case LET -> new Ast.Stmt.Let(readString(), Optional.ofNullable(readString()), Optional.ofNullable(readAstNode()));
+            case DEF -> {
+                var name = readString();
+                var parameters = new ArrayList<String>();
+                for (int i = readVarint(); i > 0; i--) {
+                    parameters.add(readString());
+                }
+                var types = new ArrayList<Optional<String>>();
+                for (int i = readVarint(); i > 0; i--) {
+                    types.add(Optional.ofNullable(readString()));
+                }
+                yield new Ast.Stmt.Def(name, parameters, types, Optional.ofNullable(readString()), readAstNodes());
+            }
+            case IF -> new Ast.Stmt.If(readAstNode(), readAstNodes(), readAstNodes());
+            case FOR -> new Ast.Stmt.For(readString(), readAstNode(), readAstNodes());
+            case RETURN -> new Ast.Stmt.Return(Optional.ofNullable(readAstNode()));
+            case EXPRESSION -> new Ast.Stmt.Expression(readAstNode());
+            case ASSIGNMENT -> new Ast.Stmt.Assignment(readAstNode(), readAstNode());
+            case LITERAL -> new Ast.Expr.Literal(readValue());
+            case GROUP -> new Ast.Expr.Group(readAstNode());
+            case BINARY -> new Ast.Expr.Binary(readString(), readAstNode(), readAstNode());
+            case VARIABLE -> new Ast.Expr.Variable(readString());
+            case PROPERTY -> new Ast.Expr.Property(readAstNode(), readString());
+            case CALL -> new Ast.Expr.Function(readString(), readAstNodes());
+            case METHOD -> new Ast.Expr.Method(readAstNode(), readString(), readAstNodes());
+            case OBJECT_EXPR -> new Ast.Expr.ObjectExpr(Optional.ofNullable(readString()), readAstNodes(), readAstNodes());
+            default -> throw new IOException("Invalid AST tag " + tag + ".");
+        };
+    }
+
+    private <T extends @Nullable Ast> List<T> readAstNodes() throws IOException {
+        var size = readVarint();
+        var asts = new ArrayList<T>(Math.min(size, 1024));
+        for (int i = 0; i < size; i++) {
+            asts.add(readAstNode());
+        }
+        return asts;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends @Nullable Ir> T readIrNode() throws IOException {
+        var tag = readByte();
+        return (T) switch (tag) {
+            case NULL -> null;
+            case SOURCE -> new Ir.Source(this.<Ir.Stmt>readIrNodes());
+            case LET -> new Ir.Stmt.Let(readString(), readType(), Optional.ofNullable(readIrNode()));
+            case DEF -> {
+                var name = readString();
+                var parameters = new ArrayList<Ir.Stmt.Def.Parameter>();
+                for (int i = readVarint(); i > 0; i--) {
+                    parameters.add(new Ir.Stmt.Def.Parameter(readString(), readType()));
+                }
+                yield new Ir.Stmt.Def(name, parameters, readType(), readIrNodes());
+            }
+            case IF -> new Ir.Stmt.If(readIrNode(), readIrNodes(), readIrNodes());
+            case FOR -> new Ir.Stmt.For(readString(), readType(), readIrNode(), readIrNodes());
+            case RETURN -> new Ir.Stmt.Return(Optional.ofNullable(readIrNode()));
+            case EXPRESSION -> new Ir.Stmt.Expression(readIrNode());
+            case ASSIGNMENT -> new Ir.Stmt.Assignment.Variable(readIrNode(), readIrNode());
+            case ASSIGNMENT_PROPERTY -> new Ir.Stmt.Assignment.Property(readIrNode(), readIrNode());
+            case LITERAL -> new Ir.Expr.Literal(readValue(), readType());
+            case GROUP -> new Ir.Expr.Group(readIrNode());
+            case BINARY -> new Ir.Expr.Binary(readString(), readIrNode(), readIrNode(), readType());
+            case VARIABLE -> new Ir.Expr.Variable(readString(), readType());
+            case PROPERTY -> new Ir.Expr.Property(readIrNode(), readString(), readType());
+            case CALL -> new Ir.Expr.Function(readString(), readIrNodes(), readType());
+            case METHOD -> new Ir.Expr.Method(readIrNode(), readString(), readIrNodes(), readType());
+            case OBJECT_EXPR -> new Ir.Expr.ObjectExpr(Optional.ofNullable(readString()), readIrNodes(), readIrNodes(), readType());
+            default -> throw new IOException("Invalid IR tag " + tag + ".");
+        };
+    }
+
+    private <T extends @Nullable Ir> List<T> readIrNodes() throws IOException {
+        var size = readVarint();
+        var irs = new ArrayList<T>(Math.min(size, 1024));
+        for (int i = 0; i < size; i++) {
+            irs.add(readIrNode());
+        }
+        return irs;
+    }
+
+    private @Nullable Type readType() throws IOException {
+        var tag = readByte();
+        return switch (tag) {
+            case NULL -> null;
+            case PRIMITIVE -> {
+                var name = readString();
+                yield Environment.TYPES.getOrDefault(name, new Type.Primitive(name));
+            }
+            case FUNCTION -> {
+                var parameters = new ArrayList<Type>();
+                for (int i = readVarint(); i > 0; i--) {
+                    parameters.add(readType());
+                }
+                yield new Type.Function(parameters, readType());
+            }
+            case OBJECT -> {
+                //registered before reading the scope, which may refer to it
+                var object = new Type.Object(new Scope(null));
+                objects.add(object);
+                for (int i = readVarint(); i > 0; i--) {
+                    object.scope().define(readString(), readType());
+                }
+                yield object;
+            }
+            case OBJECT_REFERENCE -> {
+                var index = readVarint();
+                if (index >= objects.size()) {
+                    throw new IOException("Invalid object reference " + index + ".");
+                }
+                yield objects.get(index);
+            }
+            default -> throw new IOException("Invalid type tag " + tag + ".");
+        };
+    }
+
+    private @Nullable Object readValue() throws IOException {
+        var tag = readByte();
+        return switch (tag) {
+            case NULL -> null;
+            case TRUE -> true;
+            case FALSE -> false;
+            case INTEGER -> new BigInteger(readBytes());
+            case LONG_INTEGER -> BigInteger.valueOf(readZigzag());
+            case DECIMAL -> {
+                var scale = (int) readZigzag();
+                yield new BigDecimal(new BigInteger(readBytes()), scale);
+            }
+            case LONG_DECIMAL -> {
+                var scale = (int) readZigzag();
+                yield BigDecimal.valueOf(readZigzag(), scale);
+            }
+            case CHARACTER -> (char) readVarint();
+            case STRING -> readString();
+            default -> throw new IOException("Invalid literal tag " + tag + ".");
+        };
+    }
+
+    private @Nullable String readString() throws IOException {
+        var code = readVarint();
+        if (code == NULL) {
+            return null;
+        } else if (code == NEW_STRING) {
+            var length = readVarint();
+            String string;
+            if (fill(length)) {
+                string = new String(buffer, position, length, StandardCharsets.UTF_8);
+                position += length;
+            } else {
+                string = new String(readBytes(length), StandardCharsets.UTF_8);
+            }
+            strings.add(string);
+            return string;
+        } else if (code - STRING_REFERENCE < strings.size()) {
+            return strings.get(code - STRING_REFERENCE);
+        }
+        throw new IOException("Invalid string reference " + (code - STRING_REFERENCE) + ".");
+    }
+
+    private byte[] readBytes() throws IOException {
+        return readBytes(readVarint());
+    }
+
+    /**
+     * Reads the given number of bytes, growing the result only as bytes
+     * actually arrive.
+     */
+    private byte[] readBytes(int length) throws IOException {
+        if (fill(length)) {
+            var bytes = new byte[length];
+            System.arraycopy(buffer, position, bytes, 0, length);
+            position += length;
+            return bytes;
+        }
+        var bytes = new ByteArrayOutputStream();
+        while (bytes.size() < length) {
+            if (!fill(1)) {
+                throw new EOFException();
+            }
+            var count = Math.min(limit - position, length - bytes.size());
+            bytes.write(buffer, position, count);
+            position += count;
+        }
+        return bytes.toByteArray();
+    }
+
+    private long readZigzag() throws IOException {
+        var value = readLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private int readVarint() throws IOException {
+        var value = readLong();
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IOException("Invalid varint.");
+        }
+        return (int) value;
+    }
+
+    private long readLong() throws IOException {
+        var value = 0L;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            var b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Invalid varint.");
+    }
+
+    private int readByte() throws IOException {
+        if (position == limit && !fill(1)) {
+            throw new EOFException();
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    /**
+     * Ensures the next count bytes are buffered, returning false if the
+     * stream ends first or they cannot fit in the buffer.
+     */
+    private boolean fill(int count) throws IOException {
+        if (limit - position >= count) {
+            return true;
+        } else if (count > buffer.length) {
+            return false;
+        }
+        System.arraycopy(buffer, position, buffer, 0, limit - position);
+        limit -= position;
+        position = 0;
+        while (limit < count) {
+            var read = in.read(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                return false;
+            }
+            limit += read;
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+}
@@ -0,0 +1,426 @@
+package plc.project.codec;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import plc.project.analyzer.Ir;
+import plc.project.analyzer.Type;
+import plc.project.parser.Ast;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static plc.project.codec.Format.*;
+
+/**
+ * Writes {@link Ast.Source} and {@link Ir.Source} trees to a stream in the
+ * binary format read by {@link TreeReader}, which is versioned by
+ * {@link #VERSION}.
+ *
+ * <p>Literals keep their exact values: integers and decimals are written in
+ * full, however large, and decimals keep their scale. Strings are written
+ * once per stream and then referenced by index, as are
+ * {@link Type.Object}s, whose scope may refer back to the object. Object
+ * scopes are written without a parent, which the analyzer never gives them.
+ *
+ * <p>Output is buffered by the writer itself, so the stream need not be.
+ */
+public final class TreeWriter implements Closeable, Flushable {
+
+    public static final int VERSION = Format.VERSION;
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[1 << 16];
+    private int position = 0;
+    private final Map<String, Integer> strings = new HashMap<>();
+    private final Map<Type.Object, Integer> objects = new IdentityHashMap<>();
+
+    public TreeWriter(OutputStream out) throws IOException {
+        this.out = out;
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            writeByte(MAGIC >>> shift);
+        }
+        writeVarint(VERSION);
+    }
+
+    public void write(Ast.Source source) throws IOException {
+        writeByte(AST);
+        writeNode(source);
+    }
+
+    public void write(Ir.Source source) throws IOException {
+        writeByte(IR);
+        writeNode(source);
+    }
+
+    private void writeNode(Ast ast) throws IOException {
+        switch (ast) {
+            case Ast.Source source -> {
+                writeByte(SOURCE);
+                writeAsts(source.statements());
+            }
+            case Ast.Stmt.Let stmt -> {
+                writeByte(LET);
+                writeString(stmt.name());
+                writeString(stmt.type().orElse(null));
+                writeAst(stmt.value().orElse(null));
+            }
+            case Ast.Stmt.Def stmt -> {
+                writeByte(DEF);
+                writeString(stmt.name());
+                writeVarint(stmt.parameters().size());
+                for (var parameter : stmt.parameters()) {
+                    writeString(parameter);
+                }
+                writeVarint(stmt.parameterTypes().size());
+                for (var type : stmt.parameterTypes()) {
+                    writeString(type.orElse(null));
+                }
+                writeString(stmt.returnType().orElse(null));
+                writeAsts(stmt.body());
+            }
+            case Ast.Stmt.If stmt -> {
+                writeByte(IF);
+                writeAst(stmt.condition());
+                writeAsts(stmt.thenBody());
+                writeAsts(stmt.elseBody());
+            }
+            case Ast.Stmt.For stmt -> {
+                writeByte(FOR);
+                writeString(stmt.name());
+                writeAst(stmt.expression());
+                writeAsts(stmt.body());
+            }
+            case Ast.Stmt.Return stmt -> {
+                writeByte(RETURN);
+                writeAst(stmt.value().orElse(null));
+            }
+            case Ast.Stmt.Expression stmt -> {
+                writeByte(EXPRESSION);
+                writeAst(stmt.expression());
+            }
+            case Ast.Stmt.Assignment stmt -> {
+                writeByte(ASSIGNMENT);
+                writeAst(stmt.expression());
+                writeAst(stmt.value());
+            }
+            case Ast.Expr.Literal expr -> {
+                writeByte(LITERAL);
+                writeValue(expr.value());
+            }
+            case Ast.Expr.Group expr -> {
+                writeByte(GROUP);
+                writeAst(expr.expression());
+            }
+            case Ast.Expr.Binary expr -> {
+                writeByte(BINARY);
+                writeString(expr.operator());
+                writeAst(expr.left());
+                writeAst(expr.right());
+            }
+            case Ast.Expr.Variable expr -> {
+                writeByte(VARIABLE);
+                writeString(expr.name());
+            }
+            case Ast.Expr.Property expr -> {
+                writeByte(PROPERTY);
+                writeAst(expr.receiver());
+                writeString(expr.name());
+            }
+            case Ast.Expr.Function expr -> {
+                writeByte(CALL);
+                writeString(expr.name());
+                writeAsts(expr.arguments());
+            }
+            case Ast.Expr.Method expr -> {
+                writeByte(METHOD);
+                writeAst(expr.receiver());
+                writeString(expr.name());
+                writeAsts(expr.arguments());
+            }
+            case Ast.Expr.ObjectExpr expr -> {
+                writeByte(OBJECT_EXPR);
+                writeString(expr.name().orElse(null));
+                writeAsts(expr.fields());
+                writeAsts(expr.methods());
+            }
+        }
+    }
+
+    private void writeAst(@Nullable Ast ast) throws IOException {
+        if (ast == null) {
+            writeByte(NULL);
+        } else {
+            writeNode(ast);
+        }
+    }
+
+    private void writeAsts(List<? extends @Nullable Ast> asts) throws IOException {
+        writeVarint(asts.size());
+        for (var ast : asts) {
+            writeAst(ast);
+        }
+    }
+
+    private void writeNode(Ir ir) throws IOException {
+        switch (ir) {
+            case Ir.Source source -> {
+                writeByte(SOURCE);
+                writeIrs(source.statements());
+            }
+            case Ir.Stmt.Let stmt -> {
+                writeByte(LET);
+                writeString(stmt.name());
+                writeType(stmt.type());
+                writeIr(stmt.value().orElse(null));
+            }
+            case Ir.Stmt.Def stmt -> {
+                writeByte(DEF);
+                writeString(stmt.name());
+                writeVarint(stmt.parameters().size());
+                for (var parameter : stmt.parameters()) {
+                    writeString(parameter.name());
+                    writeType(parameter.type());
+                }
+                writeType(stmt.returns());
+                writeIrs(stmt.body());
+            }
+            case Ir.Stmt.If stmt -> {
+                writeByte(IF);
+                writeIr(stmt.condition());
+                writeIrs(stmt.thenBody());
+                writeIrs(stmt.elseBody());
+            }
+            case Ir.Stmt.For stmt -> {
+                writeByte(FOR);
+                writeString(stmt.name());
+                writeType(stmt.type());
+                writeIr(stmt.expression());
+                writeIrs(stmt.body());
+            }
+            case Ir.Stmt.Return stmt -> {
+                writeByte(RETURN);
+                writeIr(stmt.value().orElse(null));
+            }
+            case Ir.Stmt.Expression stmt -> {
+                writeByte(EXPRESSION);
+                writeIr(stmt.expression());
+            }
+            case Ir.Stmt.Assignment.Variable stmt -> {
+                writeByte(ASSIGNMENT);
+                writeIr(stmt.variable());
+                writeIr(stmt.value());
+            }
+            case Ir.Stmt.Assignment.Property stmt -> {
+                writeByte(ASSIGNMENT_PROPERTY);
+                writeIr(stmt.property());
+                writeIr(stmt.value());
+            }
+            case Ir.Expr.Literal expr -> {
+                writeByte(LITERAL);
+                writeValue(expr.value());
+                writeType(expr.type());
+            }
+            case Ir.Expr.Group expr -> {
+                writeByte(GROUP);
+                writeIr(expr.expression());
+            }
+            case Ir.Expr.Binary expr -> {
+                writeByte(BINARY);
+                writeString(expr.operator());
+                writeIr(expr.left());
+                writeIr(expr.right());
+                writeType(expr.type());
+            }
+            case Ir.Expr.Variable expr -> {
+                writeByte(VARIABLE);
+                writeString(expr.name());
+                writeType(expr.type());
+            }
+            case Ir.Expr.Property expr -> {
+                writeByte(PROPERTY);
+                writeIr(expr.receiver());
+                writeString(expr.name());
+                writeType(expr.type());
+            }
+            case Ir.Expr.Function expr -> {
+                writeByte(CALL);
+                writeString(expr.name());
+                writeIrs(expr.arguments());
+                writeType(expr.type());
+            }
+            case Ir.Expr.Method expr -> {
+                writeByte(METHOD);
+                writeIr(expr.receiver());
+                writeString(expr.name());
+                writeIrs(expr.arguments());
+                writeType(expr.type());
+            }
+            case Ir.Expr.ObjectExpr expr -> {
+                writeByte(OBJECT_EXPR);
+                writeString(expr.name().orElse(null));
+                writeIrs(expr.fields());
+                writeIrs(expr.methods());
+                writeType(expr.type());
+            }
+        }
+    }
+
+    private void writeIr(@Nullable Ir ir) throws IOException {
+        if (ir == null) {
+            writeByte(NULL);
+        } else {
+            writeNode(ir);
+        }
+    }
+
+    private void writeIrs(List<? extends @Nullable Ir> irs) throws IOException {
+        writeVarint(irs.size());
+        for (var ir : irs) {
+            writeIr(ir);
+        }
+    }
+
+    /**
+     * Writes a type. An object type is written in full the first time, as its
+     * variables, and by reference afterwards.
+     */
+    private void writeType(@Nullable Type type) throws IOException {
+        switch (type) {
+            case null -> writeByte(NULL);
+            case Type.Primitive primitive -> {
+                writeByte(PRIMITIVE);
+                writeString(primitive.name());
+            }
+            case Type.Function function -> {
+                writeByte(FUNCTION);
+                writeVarint(function.parameters().size());
+                for (var parameter : function.parameters()) {
+                    writeType(parameter);
+                }
+                writeType(function.returns());
+            }
+            case Type.Object object when objects.containsKey(object) -> {
+                writeByte(OBJECT_REFERENCE);
+                writeVarint(objects.get(object));
+            }
+            case Type.Object object -> {
+                objects.put(object, objects.size());
+                writeByte(OBJECT);
+                var variables = object.scope().collect(true);
+                writeVarint(variables.size());
+                for (var entry : variables.entrySet()) {
+                    writeString(entry.getKey());
+                    writeType(entry.getValue());
+                }
+            }
+        }
+    }
+
+    private void writeValue(@Nullable Object value) throws IOException {
+        switch (value) {
+            case null -> writeByte(NULL);
+            case Boolean bool -> writeByte(bool ? TRUE : FALSE);
+            case BigInteger integer when integer.bitLength() < Long.SIZE -> {
+                writeByte(LONG_INTEGER);
+                writeZigzag(integer.longValue());
+            }
+            case BigInteger integer -> {
+                writeByte(INTEGER);
+                writeBytes(integer.toByteArray());
+            }
+            case BigDecimal decimal when decimal.unscaledValue().bitLength() < Long.SIZE -> {
+                writeByte(LONG_DECIMAL);
+                writeZigzag(decimal.scale());
+                writeZigzag(decimal.unscaledValue().longValue());
+            }
+            case BigDecimal decimal -> {
+                writeByte(DECIMAL);
+                writeZigzag(decimal.scale());
+                writeBytes(decimal.unscaledValue().toByteArray());
+            }
+            case Character character -> {
+                writeByte(CHARACTER);
+                writeVarint(character);
+            }
+            case String string -> {
+                writeByte(STRING);
+                writeString(string);
+            }
+            default -> throw new IllegalArgumentException("Unsupported literal " + value.getClass() + ".");
+        }
+    }
+
+    private void writeString(@Nullable String string) throws IOException {
+        if (string == null) {
+            writeVarint(NULL);
+        } else if (strings.containsKey(string)) {
+            writeVarint(STRING_REFERENCE + strings.get(string));
+        } else {
+            strings.put(string, strings.size());
+            writeVarint(NEW_STRING);
+            writeBytes(string.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        writeVarint(bytes.length);
+        if (bytes.length > buffer.length - position) {
+            flushBuffer();
+        }
+        if (bytes.length > buffer.length) {
+            out.write(bytes);
+        } else {
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+    }
+
+    private void writeZigzag(long value) throws IOException {
+        writeVarint((value << 1) ^ (value >> 63));
+    }
+
+    private void writeVarint(long value) throws IOException {
+        if (buffer.length - position < 10) {
+            flushBuffer();
+        }
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    private void writeByte(int value) throws IOException {
+        if (position == buffer.length) {
+            flushBuffer();
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    private void flushBuffer() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try (out) {
+            flushBuffer();
+        }
+    }
+
+}
@@ -1,9 +1,32 @@
 package plc.project.evaluator;
 
+import org.checkerframework.checker.nullness.qual.Nullable;
+import plc.project.parser.Ast;
+
 public final class EvaluateException extends Exception {
 
+    private transient @Nullable Ast ast; //nodes are not serializable
+
     public EvaluateException(String message) {
         super(message);
     }
 
+    /**
+     * Returns the innermost AST node being evaluated when the exception was
+     * thrown, or null if unknown. Its position is available from the
+     * {@link plc.project.parser.Parser} which produced it.
+     */
+    public @Nullable Ast ast() {
+        return ast;
+    }
+
+    /**
+     * Sets the node, unless one is already known.
+     */
+    void locate(Ast ast) {
+        if (this.ast == null) {
+            this.ast = ast;
+        }
+    }
+
 }
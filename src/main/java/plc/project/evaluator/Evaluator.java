@@ -1,5 +1,8 @@
 package plc.project.evaluator;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.checkerframework.checker.nullness.qual.Nullable;
 import plc.project.parser.Ast;
 
 import javax.swing.*;
@@ -20,14 +23,32 @@ class Return extends RuntimeException {
 
 public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateException> {
 
+    private static final Logger LOGGER = LogManager.getLogger();
+
     private Scope scope;
+    private Map<Ast, Resolver.Slot> slots = Map.of(); //of the source being evaluated, see Resolver
 
     public Evaluator(Scope scope) {
         this.scope = scope;
     }
 
+    /**
+     * Dispatches as usual, recording the innermost node being evaluated on any
+     * {@link EvaluateException} passing through so it can be located.
+     */
+    @Override
+    public RuntimeValue visit(Ast ast) throws EvaluateException {
+        try {
+            return Ast.Visitor.super.visit(ast);
+        } catch (EvaluateException exception) {
+            exception.locate(ast);
+            throw exception;
+        }
+    }
+
     @Override
     public RuntimeValue visit(Ast.Source ast) throws EvaluateException {
+        slots = Resolver.resolve(ast, scope);
         RuntimeValue value = new RuntimeValue.Primitive(null);
         for (var stmt : ast.statements()) {
             value = visit(stmt);
@@ -74,13 +95,16 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
             throw new EvaluateException("Parameters are not unique!");
         }
         //define name in current scope
+        var resolved = slots;  //the body was resolved with the source defining it
         RuntimeValue.Function ret_function = new RuntimeValue.Function(ast.name(), arguments -> {
             if (ast.parameters().size() != arguments.size()) {
                 throw new EvaluateException("Parameter size doesn't match argument size!");
             }
             RuntimeValue check_ret = null;
             Scope parent_restore = scope;  //restoration variable to revert back to at end of call
+            var slots_restore = slots;
             scope = new Scope(scope);  //"entering" new scope by setting it as current scope
+            slots = resolved;
             //defining all variables for parameters
             try {
                 for (int i = 0; i < ast.parameters().size(); i++) {
@@ -96,9 +120,11 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
             }
             catch (EvaluateException exception) {
                 scope = parent_restore;
+                slots = slots_restore;
                 throw new EvaluateException("Exception handled within function!");
             }
             scope = parent_restore;
+            slots = slots_restore;
             //need to check if return, then return the value, otherwise return nill
             if (check_ret != null) {
                 return check_ret;
@@ -122,13 +148,13 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
             }
             scope = new_scope;  //"entering" new scope by setting it as current scope
             if (Objects.equals(ast.condition(), new Ast.Expr.Literal(true))) {
-                System.out.println("true");
+                LOGGER.trace("If condition is TRUE");
                 for (var each_stmt : ast.thenBody()) {
                     ret_val = visit(each_stmt);
                 }
             }
             else if (Objects.equals(ast.condition(), new Ast.Expr.Literal(false))) {
-                System.out.println("false");
+                LOGGER.trace("If condition is FALSE");
                 for (var each_stmt : ast.elseBody()) {
                     ret_val = visit(each_stmt);
                 }
@@ -138,7 +164,7 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
         else {
             throw new EvaluateException("Ast condition not of primitive type!");
         }
-        System.out.println(ret_val);
+        LOGGER.trace("If evaluated to {}", ret_val);
         return ret_val;
     }
 
@@ -153,7 +179,7 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
             //looping through the iterable
             for (Object element : iter) {
                 //entering new scope
-                scope = new Scope(scope);
+                scope = new Scope(parent_restore);  //a fresh scope per iteration, not nested in the last one
                 if (!(element instanceof RuntimeValue runVal)) {
                     scope = parent_restore;  //restore before crashing
                     throw new EvaluateException("Element not a runtime value!");
@@ -193,12 +219,15 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
         if (!(ast.expression() instanceof Ast.Expr.Variable || ast.expression() instanceof Ast.Expr.Property)) {
             throw new EvaluateException("Expression not variable or property!");
         } else if (ast.expression() instanceof Ast.Expr.Variable var) {
+            var slot = slots.get(var);
+            ret_val = visit(ast.value());  //evaluating the value cannot define a variable in this scope
+            if (slot != null && scope.set(slot.depth(), slot.index(), var.name(), ret_val)) {
+                return ret_val;
+            }
             if (scope.get(var.name(), false).isPresent()) {
-                ret_val = visit(ast.value());
                 scope.set(var.name(), ret_val);
             } else {
                 //defines new if does not exist
-                ret_val = visit(ast.value());
                 scope.define(var.name(), ret_val);
             }
         } else if (ast.expression() instanceof Ast.Expr.Property prop) {
@@ -220,7 +249,11 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
 
     @Override
     public RuntimeValue visit(Ast.Expr.Literal ast) throws EvaluateException {
-        return new RuntimeValue.Primitive(ast.value());
+        return switch (ast.value()) {
+            case BigInteger integer -> IntegerArithmetic.valueOf(integer);
+            case Boolean bool -> IntegerArithmetic.valueOf(bool);
+            case null, default -> new RuntimeValue.Primitive(ast.value());
+        };
     }
 
     @Override
@@ -230,6 +263,15 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
 
     //helper function to reduce boilerplate code in binary
     public RuntimeValue binaryHelper(String operation, Ast.Expr.Binary ast) throws EvaluateException {
+        var left = visit(ast.left());
+        var right = visit(ast.right());
+        //integers which fit in a long skip the general path (see IntegerArithmetic)
+        if (left instanceof RuntimeValue.Primitive(BigInteger l) && right instanceof RuntimeValue.Primitive(BigInteger r)) {
+            var result = IntegerArithmetic.apply(operation, l, r);
+            if (result != null) {
+                return result;
+            }
+        }
         String joinOperation = "";
         switch (operation) {
             case "-": {
@@ -281,24 +323,24 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
                 break;
             }
         }
-        var left = visit(ast.left());
-        var right = visit(ast.right());
         if (left instanceof RuntimeValue.Function pLeft) {
-            System.out.println("function");
+            LOGGER.trace("Binary {} left operand is a function", joinOperation);
             List<RuntimeValue> evaluatedArgs = Collections.singletonList(pLeft.definition()
                     .invoke(List.of(new RuntimeValue.Primitive(true))));
             for (RuntimeValue arg : evaluatedArgs) {
                 if (arg instanceof RuntimeValue.Primitive pArg && pArg.value() instanceof Boolean) {
-                    System.out.println(pArg);
+                    LOGGER.trace("Binary {} short-circuited to {}", joinOperation, pArg);
                     return pArg;
                 }
             }
 
         }
         if (left instanceof RuntimeValue.Primitive pLeft) {
-            System.out.println(pLeft.print());
+            if (LOGGER.isTraceEnabled()) {
+                LOGGER.trace("Binary {} left operand {}", joinOperation, pLeft.print());
+            }
             if (Objects.equals(pLeft.print(), "TRUE") && joinOperation.equals("or")) {
-                System.out.println("sdf");
+                LOGGER.trace("Binary or short-circuited to TRUE");
                 return new RuntimeValue.Primitive(true);
             }
             if (pLeft.value() instanceof BigDecimal) {
@@ -465,16 +507,32 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
 
     @Override
     public RuntimeValue visit(Ast.Expr.Binary ast) throws EvaluateException {
-        System.out.println(ast.left().toString());
+        LOGGER.trace("Binary {} left={} right={}", ast.operator(), ast.left(), ast.right());
         return binaryHelper(ast.operator(), ast);
     }
 
     @Override
     public RuntimeValue visit(Ast.Expr.Variable ast) throws EvaluateException {
-        if (scope.get(ast.name(), false).equals(Optional.empty())) {
+        var value = lookup(ast, ast.name());
+        if (value == null) {
             throw new EvaluateException("Value not present!");
         }
-        return scope.get(ast.name(), false).get();
+        return value;
+    }
+
+    /**
+     * Returns the variable a reference resolved to, or the one found by name
+     * if it is unresolved or the slot does not hold it, or null if neither.
+     */
+    private @Nullable RuntimeValue lookup(Ast ast, String name) {
+        var slot = slots.get(ast);
+        if (slot != null) {
+            var value = scope.get(slot.depth(), slot.index(), name);
+            if (value != null) {
+                return value;
+            }
+        }
+        return scope.get(name, false).orElse(null);
     }
 
     @Override
@@ -496,18 +554,14 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
 
     @Override
     public RuntimeValue visit(Ast.Expr.Function ast) throws EvaluateException {
-        if (scope.get(ast.name(), false).isEmpty()
-                || !(scope.get(ast.name(), false).get() instanceof RuntimeValue.Function)) {
+        if (!(lookup(ast, ast.name()) instanceof RuntimeValue.Function function)) {
             throw new EvaluateException("Nothing defined or not instance of function!");
         }
         var list_of_args = new ArrayList<RuntimeValue>();
         for (var argument : ast.arguments()) {
             list_of_args.add(visit(argument));  //iterate through arguments and add to list_of_args array
         }
-        //gets value of scope (Optional<RunTimeValue>), then casts as a function to get definition
-        //within definition can use the invoke function.
-        return ((RuntimeValue.Function)(scope.get(ast.name(),
-                false)).get()).definition().invoke(list_of_args);
+        return function.definition().invoke(list_of_args);
     }
 
     @Override
@@ -559,9 +613,12 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
                 scope = parent_restore;  //safely restores scope to original before throwing exception
                 throw new EvaluateException("Parameters are not unique!");
             }
+            var resolved = slots;  //the body was resolved with the source defining it
             scope.define(method.name(), new RuntimeValue.Function(method.name(), arguments -> {
                 Scope inner_parent_restore = scope;  //restoration variable to revert back to at end of call
+                var slots_restore = slots;
                 scope = new Scope(scope);  //"entering" new scope by setting it as current scope
+                slots = resolved;
                 try {
                     scope.define("this", arguments.get(0));
                     int counter = 0;
@@ -575,14 +632,17 @@ public final class Evaluator implements Ast.Visitor<RuntimeValue, EvaluateExcept
                         check_ret = visit(body);
                         if (Objects.equals(check_ret.toString(), "RETURN")) {
                             scope = inner_parent_restore;
+                            slots = slots_restore;
                             return check_ret;
                         }
                     }
                     scope = inner_parent_restore;
+                    slots = slots_restore;
                     return new RuntimeValue.Primitive(null);
                 }
                 catch (Exception exception) {
                     scope = inner_parent_restore;  //restores scope to outer scope
+                    slots = slots_restore;
                     throw new EvaluateException("Exception caught within method definition!");
                 }
             }));
@@ -0,0 +1,89 @@
+package plc.project.evaluator;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.math.BigInteger;
+
+/**
+ * Binary operators on integers which fit in a {@code long}, computed without
+ * {@link BigInteger} arithmetic. Overflow is detected with
+ * {@link Math#addExact} and friends, in which case (or for division by zero,
+ * or an operator this does not handle) the {@link Evaluator} falls back to
+ * {@link BigInteger}, so results are identical.
+ *
+ * <p>Results are {@link BigInteger}s as usual, but comparisons return shared
+ * {@link RuntimeValue.Primitive}s, as do integers from {@link #CACHE_LOW} to
+ * {@link #CACHE_HIGH} (including literals), so typical loop counters and
+ * conditions allocate nothing.
+ */
+final class IntegerArithmetic {
+
+    static final int CACHE_LOW = -128;
+    static final int CACHE_HIGH = 1024;
+
+    private static final RuntimeValue.Primitive TRUE = new RuntimeValue.Primitive(true);
+    private static final RuntimeValue.Primitive FALSE = new RuntimeValue.Primitive(false);
+    private static final RuntimeValue.Primitive[] CACHE = new RuntimeValue.Primitive[CACHE_HIGH - CACHE_LOW + 1];
+
+    static {
+        for (int i = 0; i < CACHE.length; i++) {
+            CACHE[i] = new RuntimeValue.Primitive(BigInteger.valueOf(i + CACHE_LOW));
+        }
+    }
+
+    private IntegerArithmetic() {}
+
+    /**
+     * Returns the operator applied to the integers, or null if it must be
+     * computed with {@link BigInteger}.
+     */
+    static @Nullable RuntimeValue apply(String operator, BigInteger left, BigInteger right) {
+        if (left.bitLength() > 63 || right.bitLength() > 63) {
+            return null;
+        }
+        long l = left.longValue();
+        long r = right.longValue();
+        try {
+            return switch (operator) {
+                case "+" -> valueOf(Math.addExact(l, r));
+                case "-" -> valueOf(Math.subtractExact(l, r));
+                case "*" -> valueOf(Math.multiplyExact(l, r));
+                case "/" -> r != 0 ? valueOf(Math.divideExact(l, r)) : null;
+                case "<" -> valueOf(l < r);
+                case "<=" -> valueOf(l <= r);
+                case ">" -> valueOf(l > r);
+                case ">=" -> valueOf(l >= r);
+                case "==" -> valueOf(l == r);
+                case "!=" -> valueOf(l != r);
+                default -> null;
+            };
+        } catch (ArithmeticException _) {
+            return null; //overflowed
+        }
+    }
+
+    static RuntimeValue.Primitive valueOf(long value) {
+        if (value >= CACHE_LOW && value <= CACHE_HIGH) {
+            return CACHE[(int) value - CACHE_LOW];
+        }
+        return new RuntimeValue.Primitive(BigInteger.valueOf(value));
+    }
+
+    /**
+     * Returns the integer as a value, which is shared if it is cached.
+     */
+    static RuntimeValue.Primitive valueOf(BigInteger value) {
+        if (value.bitLength() < 32) {
+            var i = value.intValue();
+            if (i >= CACHE_LOW && i <= CACHE_HIGH) {
+                return CACHE[i - CACHE_LOW];
+            }
+        }
+        return new RuntimeValue.Primitive(value);
+    }
+
+    static RuntimeValue.Primitive valueOf(boolean value) {
+        return value ? TRUE : FALSE;
+    }
+
+}
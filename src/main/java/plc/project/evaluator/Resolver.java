@@ -0,0 +1,212 @@
+package plc.project.evaluator;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import plc.project.parser.Ast;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolves variable references to the (depth, slot) pair of the variable they
+ * refer to before evaluation, so that the {@link Evaluator} can load them from
+ * a {@link Scope}'s arrays rather than searching each scope up the chain by
+ * name (see Crafting Interpreters, https://craftinginterpreters.com/resolving-and-binding.html).
+ * The depth counts scopes up from the one the reference is evaluated in.
+ *
+ * <p>The resolver follows the scopes the evaluator creates: one for each IF
+ * statement, FOR iteration, object, and function or method call. Functions
+ * are called in a scope whose parent is the caller's, so a function body is
+ * only resolved against its own scopes, and any other reference is left to a
+ * lookup by name. Slots are predicted from definition order, which a dynamic
+ * definition (such as assigning a name defined only in the caller) can
+ * change, so each slot is checked against the name at runtime and a mismatch
+ * also falls back to a lookup by name.
+ *
+ * <p>Nodes are keyed by identity. A node resolved to different slots in
+ * different places (as with an interned AST) is left unresolved.
+ */
+public final class Resolver {
+
+    /**
+     * The slot of a variable in the scope {@code depth} scopes up the chain.
+     */
+    public record Slot(int depth, int index) {}
+
+    private static final Slot CONFLICT = new Slot(-1, -1);
+
+    private final Map<Ast, Slot> slots = new IdentityHashMap<>();
+    private Frame frame;
+
+    private Resolver(Scope scope) {
+        this.frame = Frame.of(scope);
+    }
+
+    /**
+     * Returns the slots of the variable and function references, and the
+     * variables assigned, in a source to be evaluated in the given scope.
+     */
+    public static Map<Ast, Slot> resolve(Ast.Source source, Scope scope) {
+        var resolver = new Resolver(scope);
+        resolver.resolve(source.statements());
+        resolver.slots.values().removeIf(slot -> slot == CONFLICT);
+        return resolver.slots;
+    }
+
+    private void resolve(List<? extends Ast> asts) {
+        for (var ast : asts) {
+            resolve(ast);
+        }
+    }
+
+    private void resolve(Ast ast) {
+        switch (ast) {
+            case Ast.Source source -> resolve(source.statements());
+            case Ast.Stmt.Let stmt -> {
+                stmt.value().ifPresent(this::resolve);
+                frame.define(stmt.name());
+            }
+            case Ast.Stmt.Def stmt -> {
+                frame.define(stmt.name());
+                scoped(new Frame(null), () -> {
+                    stmt.parameters().forEach(frame::define);
+                    resolve(stmt.body());
+                });
+            }
+            case Ast.Stmt.If stmt -> {
+                resolve(stmt.condition());
+                //only one branch runs, in a scope of its own
+                scoped(new Frame(frame), () -> resolve(stmt.thenBody()));
+                scoped(new Frame(frame), () -> resolve(stmt.elseBody()));
+            }
+            case Ast.Stmt.For stmt -> {
+                resolve(stmt.expression());
+                scoped(new Frame(frame), () -> {
+                    frame.define(stmt.name());
+                    resolve(stmt.body());
+                });
+            }
+            case Ast.Stmt.Return stmt -> stmt.value().ifPresent(this::resolve);
+            case Ast.Stmt.Expression stmt -> resolve(stmt.expression());
+            case Ast.Stmt.Assignment stmt -> {
+                if (stmt.expression() instanceof Ast.Expr.Variable variable) {
+                    var defined = reference(variable, variable.name());
+                    resolve(stmt.value());
+                    if (!defined) {
+                        frame.define(variable.name()); //assigning an undefined variable defines it
+                    }
+                } else {
+                    resolve(stmt.expression());
+                    resolve(stmt.value());
+                }
+            }
+            case Ast.Expr.Literal _ -> {}
+            case Ast.Expr.Group expr -> resolve(expr.expression());
+            case Ast.Expr.Binary expr -> {
+                resolve(expr.left());
+                resolve(expr.right());
+            }
+            case Ast.Expr.Variable expr -> reference(expr, expr.name());
+            case Ast.Expr.Property expr -> resolve(expr.receiver());
+            case Ast.Expr.Function expr -> {
+                reference(expr, expr.name());
+                resolve(expr.arguments());
+            }
+            case Ast.Expr.Method expr -> {
+                resolve(expr.receiver());
+                resolve(expr.arguments());
+            }
+            case Ast.Expr.ObjectExpr expr -> scoped(new Frame(frame), () -> {
+                for (var field : expr.fields()) {
+                    field.value().ifPresent(this::resolve);
+                    frame.define(field.name());
+                }
+                for (var method : expr.methods()) {
+                    frame.define(method.name());
+                    scoped(new Frame(null), () -> {
+                        //bound as the evaluator binds them: this, then the arguments by position
+                        frame.define("this");
+                        for (int i = 0; i < method.parameters().size(); i++) {
+                            frame.define(String.valueOf(i));
+                        }
+                        resolve(method.body());
+                    });
+                }
+            });
+        }
+    }
+
+    /**
+     * Records the slot the node refers to, returning false if the name is
+     * not defined in any known scope.
+     */
+    private boolean reference(Ast ast, String name) {
+        var depth = 0;
+        for (var frame = this.frame; frame != null; frame = frame.parent) {
+            var index = frame.slot(name);
+            if (index >= 0) {
+                var slot = new Slot(depth, index);
+                var existing = slots.putIfAbsent(ast, slot);
+                if (existing != null && !existing.equals(slot)) {
+                    slots.put(ast, CONFLICT);
+                }
+                return true;
+            }
+            depth++;
+        }
+        if (slots.containsKey(ast)) {
+            slots.put(ast, CONFLICT);
+        }
+        return false;
+    }
+
+    private void scoped(Frame frame, Runnable body) {
+        var restore = this.frame;
+        this.frame = frame;
+        try {
+            body.run();
+        } finally {
+            this.frame = restore;
+        }
+    }
+
+    /**
+     * The variables a scope will have, which for the scopes that already
+     * exist starts with those already defined.
+     */
+    private static final class Frame {
+
+        private final @Nullable Frame parent;
+        private final @Nullable Scope scope;
+        private final Map<String, Integer> defined = new HashMap<>();
+        private int size;
+
+        private Frame(@Nullable Frame parent) {
+            this(parent, null);
+        }
+
+        private Frame(@Nullable Frame parent, @Nullable Scope scope) {
+            this.parent = parent;
+            this.scope = scope;
+            this.size = scope != null ? scope.size() : 0;
+        }
+
+        private static @Nullable Frame of(@Nullable Scope scope) {
+            return scope != null ? new Frame(of(scope.parent()), scope) : null;
+        }
+
+        private int slot(String name) {
+            var index = scope != null ? scope.slot(name) : -1;
+            return index >= 0 ? index : defined.getOrDefault(name, -1);
+        }
+
+        private void define(String name) {
+            if (slot(name) < 0) {
+                defined.put(name, size++);
+            }
+        }
+
+    }
+
+}
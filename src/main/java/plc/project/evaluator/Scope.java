@@ -1,29 +1,49 @@
 package plc.project.evaluator;
 
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
 
+/**
+ * A frame of variables. Variables are stored in arrays in the order they are
+ * defined, so that each has a slot index, and may be looked up either by name
+ * or by the (depth, slot) pair given by the {@link Resolver}.
+ */
 public final class Scope {
 
     private final Scope parent;
-    private final Map<String, RuntimeValue> variables = new LinkedHashMap<>();
+    private final Map<String, Integer> slots = new HashMap<>();
+    private String[] names = new String[4];
+    private RuntimeValue[] values = new RuntimeValue[4];
+    private int size;
 
     public Scope(Scope parent) {
         this.parent = parent;
     }
 
     public void define(String name, RuntimeValue object) {
-        if (!variables.containsKey(name)) {
-            variables.put(name, object);
+        if (!slots.containsKey(name)) {
+            if (size == names.length) {
+                names = Arrays.copyOf(names, 2 * size);
+                values = Arrays.copyOf(values, 2 * size);
+            }
+            slots.put(name, size);
+            names[size] = name;
+            values[size] = object;
+            size++;
         } else {
             throw new IllegalStateException("Variable is already defined.");
         }
     }
 
     public Optional<RuntimeValue> get(String name, boolean current) {
-        if (variables.containsKey(name)) {
-            return Optional.of(variables.get(name));
+        var slot = slots.get(name);
+        if (slot != null) {
+            return Optional.of(values[slot]);
         } else if (parent != null && !current) {
             return parent.get(name, false);
         } else {
@@ -32,8 +52,9 @@ public final class Scope {
     }
 
     public void set(String name, RuntimeValue object) {
-        if (variables.containsKey(name)) {
-            variables.put(name, object);
+        var slot = slots.get(name);
+        if (slot != null) {
+            values[slot] = object;
         } else if (parent != null) {
             parent.set(name, object);
         } else {
@@ -42,13 +63,64 @@ public final class Scope {
     }
 
     public Map<String, RuntimeValue> collect(boolean current) {
-        if (current || parent == null) {
-            return new LinkedHashMap<>(variables);
-        } else {
-            var map = parent.collect(false);
-            map.putAll(variables);
-            return map;
+        var map = current || parent == null ? new LinkedHashMap<String, RuntimeValue>() : parent.collect(false);
+        for (int i = 0; i < size; i++) {
+            map.put(names[i], values[i]);
+        }
+        return map;
+    }
+
+    @Nullable Scope parent() {
+        return parent;
+    }
+
+    /**
+     * Returns the number of variables defined in this scope, which is the
+     * slot of the next one.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the slot of the variable in this scope only, or -1.
+     */
+    int slot(String name) {
+        return slots.getOrDefault(name, -1);
+    }
+
+    /**
+     * Returns the variable in the given slot of the scope the given depth up
+     * the chain, or null if that slot does not hold a variable of this name.
+     * The name is checked since a resolved slot may not match at runtime
+     * (see {@link Resolver}); names are pooled by the parser, so this is
+     * normally a reference comparison.
+     */
+    @Nullable RuntimeValue get(int depth, int slot, String name) {
+        var scope = this;
+        for (int i = 0; i < depth && scope != null; i++) {
+            scope = scope.parent;
+        }
+        if (scope == null || slot >= scope.size || !name.equals(scope.names[slot])) {
+            return null;
+        }
+        return scope.values[slot];
+    }
+
+    /**
+     * Sets the variable in the given slot as with {@link #get(int, int, String)},
+     * returning false if that slot does not hold a variable of this name.
+     */
+    boolean set(int depth, int slot, String name, RuntimeValue object) {
+        var scope = this;
+        for (int i = 0; i < depth && scope != null; i++) {
+            scope = scope.parent;
+        }
+        if (scope == null || slot >= scope.size || !name.equals(scope.names[slot])) {
+            return false;
         }
+        scope.values[slot] = object;
+        return true;
     }
 
 }
@@ -0,0 +1,93 @@
+package plc.project.lexer;
+
+/**
+ * Precomputed character classes for the {@link Lexer}. Every character is
+ * mapped to a bitmask of the classes it belongs to, so a membership test is a
+ * single table load rather than compiling a regex and matching it against a
+ * freshly allocated one-character string.
+ *
+ * <p>Each class corresponds to one of the single-character patterns the
+ * lexer is specified by; the pattern is given next to each constant. Like
+ * those patterns, classes are ASCII-only, so any non-ASCII character belongs
+ * to exactly the negated classes.
+ */
+final class CharClass {
+
+    static final int SLASH = 1;                 // \/
+    static final int IDENTIFIER_START = 1 << 1; // [A-Za-z_]
+    static final int IDENTIFIER_PART = 1 << 2;  // [A-Za-z0-9_-]
+    static final int MINUS = 1 << 3;            // -
+    static final int PLUS = 1 << 4;             // \+
+    static final int DIGIT = 1 << 5;            // [0-9]
+    static final int NON_DIGIT = 1 << 6;        // [^0-9]
+    static final int EXPONENT = 1 << 7;         // e
+    static final int PERIOD = 1 << 8;           // \.
+    static final int NUMBER_PART = 1 << 9;      // [0-9.e]
+    static final int SINGLE_QUOTE = 1 << 10;    // '
+    static final int DOUBLE_QUOTE = 1 << 11;    // "
+    static final int BACKSLASH = 1 << 12;       // \\
+    static final int CHARACTER_BODY = 1 << 13;  // [^'\n\r]
+    static final int CHARACTER_ESCAPE = 1 << 14;// [bnrt'"]
+    static final int STRING_BODY = 1 << 15;     // [^"\n\r]
+    static final int STRING_ESCAPE = 1 << 16;   // [bnrt"\\]
+    static final int NON_NEWLINE = 1 << 17;     // [^\n\r]
+    static final int WHITESPACE = 1 << 18;      // [ \n\r\t]
+    static final int COMPARISON = 1 << 19;      // [<>!=]
+    static final int EQUALS = 1 << 20;          // =
+    static final int OPERATOR = 1 << 21;        // [^A-Za-z_0-9'"\n\r\t]
+
+    private static final int NON_ASCII = NON_DIGIT | CHARACTER_BODY | STRING_BODY | NON_NEWLINE | OPERATOR;
+    private static final int[] TABLE = new int[128];
+
+    static {
+        for (char c = 0; c < TABLE.length; c++) {
+            TABLE[c] = compute(c);
+        }
+    }
+
+    private CharClass() {}
+
+    /**
+     * Returns the bitmask of all classes containing the given character.
+     */
+    static int of(char c) {
+        return c < TABLE.length ? TABLE[c] : NON_ASCII;
+    }
+
+    /**
+     * Returns true if the character belongs to any class in the mask.
+     */
+    static boolean is(char c, int mask) {
+        return (of(c) & mask) != 0;
+    }
+
+    private static int compute(char c) {
+        boolean letter = (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z');
+        boolean digit = c >= '0' && c <= '9';
+        boolean newline = c == '\n' || c == '\r';
+        int mask = 0;
+        mask |= c == '/' ? SLASH : 0;
+        mask |= letter || c == '_' ? IDENTIFIER_START : 0;
+        mask |= letter || digit || c == '_' || c == '-' ? IDENTIFIER_PART : 0;
+        mask |= c == '-' ? MINUS : 0;
+        mask |= c == '+' ? PLUS : 0;
+        mask |= digit ? DIGIT : NON_DIGIT;
+        mask |= c == 'e' ? EXPONENT : 0;
+        mask |= c == '.' ? PERIOD : 0;
+        mask |= digit || c == '.' || c == 'e' ? NUMBER_PART : 0;
+        mask |= c == '\'' ? SINGLE_QUOTE : 0;
+        mask |= c == '"' ? DOUBLE_QUOTE : 0;
+        mask |= c == '\\' ? BACKSLASH : 0;
+        mask |= c != '\'' && !newline ? CHARACTER_BODY : 0;
+        mask |= "bnrt'\"".indexOf(c) != -1 ? CHARACTER_ESCAPE : 0;
+        mask |= c != '"' && !newline ? STRING_BODY : 0;
+        mask |= "bnrt\"\\".indexOf(c) != -1 ? STRING_ESCAPE : 0;
+        mask |= !newline ? NON_NEWLINE : 0;
+        mask |= c == ' ' || c == '\t' || newline ? WHITESPACE : 0;
+        mask |= "<>!=".indexOf(c) != -1 ? COMPARISON : 0;
+        mask |= c == '=' ? EQUALS : 0;
+        mask |= !letter && !digit && c != '_' && c != '\'' && c != '"' && c != '\t' && !newline ? OPERATOR : 0;
+        return mask;
+    }
+
+}
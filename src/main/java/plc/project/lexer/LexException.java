@@ -2,8 +2,32 @@ package plc.project.lexer;
 
 public final class LexException extends Exception {
 
+    private int offset = -1;
+
     public LexException(String message) {
         super(message);
     }
 
+    public LexException(String message, int offset) {
+        super(message);
+        this.offset = offset;
+    }
+
+    /**
+     * Returns the input offset of the token being lexed when the exception
+     * was thrown, or -1 if unknown. See {@link LineIndex} for line and column.
+     */
+    public int offset() {
+        return offset;
+    }
+
+    /**
+     * Sets the offset, unless one is already known.
+     */
+    void locate(int offset) {
+        if (this.offset < 0) {
+            this.offset = offset;
+        }
+    }
+
 }
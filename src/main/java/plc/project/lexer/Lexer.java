@@ -1,10 +1,26 @@
 package plc.project.lexer;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
-
-import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.base.Preconditions.checkArgument;
 
 /**
  * The lexer works through a combination of {@link #lex()}, which repeatedly
@@ -12,312 +28,942 @@ import static com.google.common.base.Preconditions.checkState;
  * {@link #lexToken()}, which determines the type of the next token and
  * delegates to the corresponding lex method.
  *
+ * <p>Token selection is an explicit state machine: the first character of a
+ * token is looked up in {@link #START} to pick the lex method, and every
+ * subsequent decision is a {@link CharClass} table test. Nothing is allocated
+ * per character, and each character is examined a bounded number of times.
+ *
  * <p>Additionally, {@link CharStream} manages the lexer state and contains
  * {@link CharStream#peek} and {@link CharStream#match}. These are helpful
  * utilities for working with character state and building tokens.
+ *
+ * <p>The lexer is also a {@link TokenSource}: {@link #advance()} lexes only
+ * as far as the next token, reading input incrementally from any
+ * {@link Readable} (a {@link java.io.Reader}, {@link CharBuffer}, or a
+ * channel via {@link #Lexer(ReadableByteChannel)}). Only the characters of
+ * the token in progress are buffered, never the whole input.
+ *
+ * <p>Alternatively, {@link #Lexer(ByteBuffer)} and {@link #map(Path)} lex
+ * UTF-8 bytes in place without decoding them first. Tokens are then spans of
+ * byte offsets into the buffer, and a literal is only decoded into a
+ * {@link String} when requested through {@link #literal(int, int)}.
+ *
+ * <p>Each token is also classified into its {@link Token.Kind} as it is
+ * emitted, reading the span in place, so keywords and operators are
+ * recognized once here rather than by string comparisons in the parser.
+ *
+ * <p>Large inputs can be lexed in parallel with {@link #lexParallel}. Tokens
+ * never span a newline, and which tokens are lexed only depends on the
+ * position in the input, so the input is split into chunks just after
+ * newlines which are lexed independently. The one piece of state carried
+ * between tokens is the length a comment adds to the following token; if a
+ * chunk ends with one pending, the next chunk is lexed again continuing from
+ * the previous one, so the result is always identical to lexing sequentially.
  */
-public final class Lexer {
+public final class Lexer implements TokenSource {
+
+    private enum State {
+        COMMENT,
+        IDENTIFIER,
+        SIGN,
+        NUMBER,
+        CHARACTER,
+        STRING,
+        ESCAPE,
+        WHITESPACE,
+        COMPARISON,
+        OPERATOR
+    }
+
+    private static final State[] START = new State[128];
+
+    static {
+        for (char c = 0; c < START.length; c++) {
+            if (CharClass.is(c, CharClass.SLASH)) {
+                START[c] = State.COMMENT;
+            } else if (CharClass.is(c, CharClass.IDENTIFIER_START)) {
+                START[c] = State.IDENTIFIER;
+            } else if (CharClass.is(c, CharClass.MINUS | CharClass.PLUS)) {
+                START[c] = State.SIGN;
+            } else if (CharClass.is(c, CharClass.DIGIT)) {
+                START[c] = State.NUMBER;
+            } else if (CharClass.is(c, CharClass.SINGLE_QUOTE)) {
+                START[c] = State.CHARACTER;
+            } else if (CharClass.is(c, CharClass.DOUBLE_QUOTE)) {
+                START[c] = State.STRING;
+            } else if (CharClass.is(c, CharClass.BACKSLASH)) {
+                START[c] = State.ESCAPE;
+            } else if (CharClass.is(c, CharClass.WHITESPACE)) {
+                START[c] = State.WHITESPACE;
+            } else if (CharClass.is(c, CharClass.COMPARISON)) {
+                START[c] = State.COMPARISON;
+            } else {
+                START[c] = State.OPERATOR;
+            }
+        }
+    }
+
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final int MIN_CHUNK = 1 << 16;
+
     private final CharStream chars;
-    boolean ThrowException = false;
+    private int stop = Integer.MAX_VALUE;  //index at which to stop lexing a chunk
+
+    /**
+     * Creates a lexer over the string, which is read in place. Token offsets
+     * are indices into the string.
+     */
     public Lexer(String input) {
-        chars = new CharStream(input);
+        chars = new StringStream(input);
     }
 
-    public List<Token> lex() throws LexException {
-        var tokens = new ArrayList<Token>();
-        while (chars.has(0)) {
-            Token temp = lexToken();
-            System.out.println(temp);
-            if (temp != null) {  //does not add to tokens if whitespace or comment
-                tokens.add(temp);
-                if (ThrowException) {
-                    throw new LexException("Exception Thrown! Do Not Resist");
+    /**
+     * Creates a lexer reading from the given input, which is consumed as
+     * tokens are requested. I/O failures are rethrown as
+     * {@link UncheckedIOException}.
+     */
+    public Lexer(Readable input) {
+        chars = new ReadableStream(input);
+    }
+
+    /**
+     * Creates a lexer decoding UTF-8 from the given channel, such as a
+     * {@link java.nio.channels.FileChannel}.
+     */
+    public Lexer(ReadableByteChannel channel) {
+        this(Channels.newReader(channel, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Creates a lexer over the remaining UTF-8 encoded bytes of the buffer,
+     * which must not be modified while tokens are in use. Token offsets are
+     * absolute byte indices into the buffer.
+     */
+    public Lexer(ByteBuffer input) {
+        chars = new Utf8Stream(input);
+    }
+
+    /**
+     * Creates a lexer over the string starting at the given index, which must
+     * be the end of a token (or the start of the string).
+     */
+    Lexer(String input, int index) {
+        chars = new StringStream(input);
+        chars.index = index;
+    }
+
+    private Lexer(CharStream chars, int stop) {
+        this.chars = chars;
+        this.stop = stop;
+    }
+
+    /**
+     * Creates a lexer over a UTF-8 file mapped into memory. Files larger than
+     * 2GB are not supported by a single mapping.
+     */
+    public static Lexer map(Path path) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new Lexer(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Lexes the string in parallel on the given pool, producing exactly the
+     * tokens (and any exception) of lexing it sequentially.
+     */
+    public static TokenBuffer lexParallel(String input, ForkJoinPool pool) throws LexException {
+        return lexParallel(new Lexer(input), pool, chunk(input.length(), pool));
+    }
+
+    /**
+     * Lexes the remaining UTF-8 bytes of the buffer in parallel on the given
+     * pool, as with {@link #lexParallel(String, ForkJoinPool)}.
+     */
+    public static TokenBuffer lexParallel(ByteBuffer input, ForkJoinPool pool) throws LexException {
+        return lexParallel(new Lexer(input), pool, chunk(input.remaining(), pool));
+    }
+
+    /**
+     * Returns a chunk size giving each thread several chunks to balance
+     * uneven lexing costs, without making chunks too small to be worthwhile.
+     */
+    private static int chunk(int size, ForkJoinPool pool) {
+        return Math.max(MIN_CHUNK, size / (pool.getParallelism() * 4));
+    }
+
+    /**
+     * Lexes the remaining input of the lexer in chunks of roughly the given
+     * size, each ending just after a newline. Lines containing a slash are
+     * not split after, since a comment or lone slash would carry its length
+     * into the next chunk and force it to be lexed again.
+     */
+    static TokenBuffer lexParallel(Lexer lexer, ForkJoinPool pool, int chunk) throws LexException {
+        checkArgument(lexer.resident() && chunk > 0);
+        var chars = lexer.chars;
+        var bounds = new ArrayList<Integer>();
+        bounds.add(chars.index);
+        for (int position = chars.index + chunk; position < chars.size(); position++) {
+            if (chars.at(position - 1) == '\n' && !slashBefore(chars, position - 1)) {
+                bounds.add(position);
+                position += chunk - 1;
+            }
+        }
+        bounds.add(chars.size());
+        var tasks = new ArrayList<ForkJoinTask<Chunk>>();
+        for (int i = 0; i + 1 < bounds.size(); i++) {
+            var start = bounds.get(i);
+            var end = bounds.get(i + 1);
+            tasks.add(pool.submit(() -> Chunk.lex(new Lexer(chars.fork(start), end))));
+        }
+        try {
+            var parts = new ArrayList<TokenBuffer>();
+            Lexer previous = null;
+            for (int i = 0; i < tasks.size(); i++) {
+                var start = bounds.get(i);
+                if (previous == null || (previous.chars.index == start && previous.chars.length == 0)) {
+                    var result = tasks.get(i).join();
+                    if (result.exception() != null) {
+                        throw result.exception();
+                    }
+                    parts.add(result.tokens());
+                    previous = result.lexer();
+                } else {
+                    //the chunk does not start in the state assumed, so continue from the previous chunk instead
+                    tasks.get(i).cancel(false);
+                    previous.stop = bounds.get(i + 1);
+                    parts.add(TokenBuffer.lex(previous));
                 }
             }
+            return TokenBuffer.join(lexer, parts);
+        } finally {
+            for (var task : tasks) {
+                task.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Returns true if the line ending at the given newline contains a slash.
+     */
+    private static boolean slashBefore(CharStream chars, int newline) {
+        for (int position = newline - 1; position >= chars.index && chars.at(position) != '\n'; position--) {
+            if (chars.at(position) == '/') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The tokens lexed from a chunk, along with the lexer (holding the state
+     * it finished in) or the exception it failed with.
+     */
+    private record Chunk(Lexer lexer, @Nullable TokenBuffer tokens, @Nullable LexException exception) {
+
+        private static Chunk lex(Lexer lexer) {
+            try {
+                return new Chunk(lexer, TokenBuffer.lex(lexer), null);
+            } catch (LexException exception) {
+                return new Chunk(lexer, null, exception);
+            }
+        }
+
+    }
+
+    public List<Token> lex() throws LexException {
+        var tokens = new ArrayList<Token>();
+        for (var token = next(); token != null; token = next()) {
+            LOGGER.trace("Lexed {}", token);
+            tokens.add(token);
         }
         return tokens;
     }
 
+    @Override
+    public Token.@Nullable Kind advance() throws LexException {
+        while (chars.has(0) && chars.index < stop) {
+            var begin = chars.position(chars.index);
+            Token.Type type;
+            try {
+                type = lexToken();
+            } catch (LexException exception) {
+                exception.locate(begin);
+                throw exception;
+            }
+            if (type != null) {  //does not return if whitespace or comment
+                return Token.Kind.of(type, chars.text);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int start() {
+        return chars.start;
+    }
+
+    @Override
+    public int length() {
+        return chars.end - chars.start;
+    }
+
+    @Override
+    public String literal(int start, int length) {
+        return chars.literal(start, length);
+    }
+
+    @Override
+    public boolean literalEquals(int start, int length, String literal) {
+        return chars.literalEquals(start, length, literal);
+    }
+
+    /**
+     * Returns true for string and byte input, where literals of any earlier
+     * token remain available; streamed character input only retains the
+     * current token.
+     */
+    @Override
+    public boolean resident() {
+        return !(chars instanceof ReadableStream);
+    }
+
+    /**
+     * Marks the characters matched since the last token as a token of the
+     * given type, returning the type.
+     */
+    private Token.Type emit(Token.Type type) {
+        chars.emit();
+        return type;
+    }
+
     private void lexComment() {
-        if (chars.match("\\/")) {
-            while (chars.match("[^\\n\\r]*")) {}
+        if (chars.match(CharClass.SLASH)) {
+            while (chars.match(CharClass.NON_NEWLINE)) {}
         }
     }
 
-    private Token lexToken() throws LexException {
-        if (chars.match("\\/")) {
-            lexComment();
-        } else if (chars.match("[A-Za-z_]")) {
-            return lexIdentifier();
-        } else if (chars.match("-")) {
-            if (chars.match("[0-9]")) {
-                return lexNumber();
+    private Token.@Nullable Type lexToken() throws LexException {
+        var c = chars.get(0);
+        var state = c < START.length ? START[c] : State.OPERATOR;
+        chars.skip(1);
+        switch (state) {
+            case COMMENT -> lexComment();
+            case IDENTIFIER -> {
+                return lexIdentifier();
             }
-            return new Token(Token.Type.OPERATOR, chars.emit());
-        } else if (chars.match("\\+")) {
-            if (chars.match("[0-9]")) {
+            case SIGN -> {
+                if (chars.match(CharClass.DIGIT)) {
+                    return lexNumber();
+                }
+                return emit(Token.Type.OPERATOR);
+            }
+            case NUMBER -> {
+                if (chars.peek(CharClass.EXPONENT, CharClass.NON_DIGIT)
+                        || (!chars.has(1) && !chars.peek(CharClass.DIGIT))) {
+                    return emit(Token.Type.INTEGER);
+                } else if (chars.peek(CharClass.PERIOD, CharClass.NON_DIGIT)) {
+                    return emit(Token.Type.INTEGER);
+                }
                 return lexNumber();
             }
-            return new Token(Token.Type.OPERATOR, chars.emit());
-        } else if (chars.match("[+-]?[0-9]+")) {
-            if (chars.peek("e", "[^0-9]*")
-                    || (!chars.has(1) && !chars.peek("[0-9]"))) {
-                return new Token(Token.Type.INTEGER, chars.emit());
-            }
-            else if (chars.peek("\\.", "[^0-9]*")
-                    || (!chars.has(1) && !chars.peek("[0-9]"))) {
-                return new Token(Token.Type.INTEGER, chars.emit());
-            }
-            return lexNumber();
-        } else if (chars.match("'")) {
-            if (chars.peek("([^'\\n\\r]|(\\\\[bnrt'\\\"]))", "'")
-                    || chars.peek("(\\\\)", "[bnrt'\\\"]", "'")) {
-                return lexCharacter();
-            }
-            ThrowException = true;
-            return new Token(Token.Type.OPERATOR, chars.emit());
-        } else if (chars.match("\"")) {
-            return lexString();
-        } else if (chars.match("\\\\")) {
-            return lexEscape();
-        } else if (chars.match("[ \\n\\r\\t]+")) {
-            lexWhitespace();
-        } else if (chars.match("[<>!=]", "[=]?")) {
-            return new Token(Token.Type.OPERATOR, chars.emit());
-        } else if (chars.match("[^A-Za-z_0-9'\"\\n\\r\\t]")) {
-            return lexOperator();
+            case CHARACTER -> {
+                if (chars.peek(CharClass.CHARACTER_BODY, CharClass.SINGLE_QUOTE)
+                        || chars.peek(CharClass.BACKSLASH, CharClass.CHARACTER_ESCAPE, CharClass.SINGLE_QUOTE)) {
+                    return lexCharacter();
+                }
+                throw new LexException("Exception Thrown! Do Not Resist");
+            }
+            case STRING -> {
+                return lexString();
+            }
+            case ESCAPE -> {
+                return lexEscape();
+            }
+            case WHITESPACE -> lexWhitespace();
+            case COMPARISON -> {
+                if (chars.match(CharClass.EQUALS)) {
+                    return emit(Token.Type.OPERATOR);
+                }
+                return lexOperator();
+            }
+            case OPERATOR -> {
+                return lexOperator();
+            }
         }
         return null;
     }
 
-    private Token lexIdentifier() throws LexException {
-        while (chars.match("[A-Za-z0-9_-]")) {}
-        return new Token(Token.Type.IDENTIFIER, chars.emit());
+    private Token.Type lexIdentifier() throws LexException {
+        while (chars.match(CharClass.IDENTIFIER_PART)) {}
+        return emit(Token.Type.IDENTIFIER);
     }
 
-    private Token lexNumber() throws LexException {
+    private Token.Type lexNumber() throws LexException {
         int decimal_flag = 0;  //keeps track of whether decimal or integer
         boolean anything_after_e = false;  //keeps track of characters after e
         try {
-            if (chars.peek("\\.", "[^0-9]")) {
-                return new Token(Token.Type.INTEGER, chars.emit());
+            if (chars.peek(CharClass.PERIOD, CharClass.NON_DIGIT)) {
+                return emit(Token.Type.INTEGER);
             }
-            if (chars.peek("\\.", "[0-9]")) {
+            if (chars.peek(CharClass.PERIOD, CharClass.DIGIT)) {
                 decimal_flag++;
             }
-            if (chars.peek("e", "[^0-9]")) {
-                return new Token(Token.Type.INTEGER, chars.emit());
+            if (chars.peek(CharClass.EXPONENT, CharClass.NON_DIGIT)) {
+                return emit(Token.Type.INTEGER);
             }
-            if (chars.match("e")) {
+            if (chars.match(CharClass.EXPONENT)) {
                 //if peek fails, return existing along with e as separate identifier
-                if (!chars.peek("\\+?-?[0-9]+")) {
+                if (!chars.peek(CharClass.DIGIT)) {
                     if (decimal_flag == 0) {
-                        return new Token(Token.Type.INTEGER, chars.emit());
+                        return emit(Token.Type.INTEGER);
                     }
                     else if (decimal_flag == 1) {
-                        return new Token(Token.Type.DECIMAL, chars.emit());
+                        return emit(Token.Type.DECIMAL);
                     }
                 }
-                while (chars.match("\\+?-?[0-9]+")) {
+                while (chars.match(CharClass.DIGIT)) {
                     anything_after_e = true;
                 }
                 if (anything_after_e && decimal_flag == 0) {
-                    return new Token(Token.Type.INTEGER, chars.emit());
+                    return emit(Token.Type.INTEGER);
                 }
                 else if (anything_after_e && decimal_flag == 1) {
-                    return new Token(Token.Type.DECIMAL, chars.emit());
+                    return emit(Token.Type.DECIMAL);
                 }
                 else if (!anything_after_e && decimal_flag == 0) {
-                    System.out.println("nothing after");
+                    LOGGER.trace("No digits after exponent at {}", chars.index);
                     throw new LexException("nothing after");
                 }
                 else if (!anything_after_e && decimal_flag == 1) {
-                    System.out.println("nothing after");
+                    LOGGER.trace("No digits after exponent at {}", chars.index);
                     throw new LexException("nothing after");
                 }
                 else {
-                    return new Token(Token.Type.IDENTIFIER, chars.emit());
+                    return emit(Token.Type.IDENTIFIER);
                 }
             }
-            while (chars.match("[0-9]*(\\.?[0-9]*)?(e\\+?-?[0-9]*)?")) {
-                if (chars.peek("\\.", "[^0-9]*")
-                        || (chars.peek("\\.") && !(chars.has(2)))) {
-                    System.out.println("outed");
-                    return new Token(Token.Type.INTEGER, chars.emit());
+            while (chars.match(CharClass.NUMBER_PART)) {
+                if (chars.peek(CharClass.PERIOD, CharClass.NON_DIGIT)
+                        || (chars.peek(CharClass.PERIOD) && !(chars.has(2)))) {
+                    LOGGER.trace("Integer ends before period at {}", chars.index);
+                    return emit(Token.Type.INTEGER);
                 }
-                if (chars.match("\\.")) {
-                    if (chars.peek("[0-9]")) {
+                if (chars.match(CharClass.PERIOD)) {
+                    if (chars.peek(CharClass.DIGIT)) {
                         decimal_flag++;
                     }
-                    while (chars.match("[0-9]+(e\\+?-?[0-9]+)?")) {
-                        if (chars.peek("e", "[^0-9]")) {
+                    while (chars.match(CharClass.DIGIT)) {
+                        if (chars.peek(CharClass.EXPONENT, CharClass.NON_DIGIT)) {
                             if (decimal_flag == 1) {
-                                return new Token(Token.Type.DECIMAL, chars.emit());
+                                return emit(Token.Type.DECIMAL);
                             }
-                            return new Token(Token.Type.INTEGER, chars.emit());
+                            return emit(Token.Type.INTEGER);
                         }
-                        if (chars.match("e", "[0-9]")) {
-                            while (chars.match("\\+?-?[0-9]+")) {}
+                        if (chars.match(CharClass.EXPONENT, CharClass.DIGIT)) {
+                            while (chars.match(CharClass.DIGIT)) {}
                             if (decimal_flag == 1) {
-                                return new Token(Token.Type.DECIMAL, chars.emit());
+                                return emit(Token.Type.DECIMAL);
                             }
                             else if (decimal_flag >= 2) {
                                 throw new LexException("Too many decimals!");
                             }
-                            return new Token(Token.Type.INTEGER, chars.emit());
+                            return emit(Token.Type.INTEGER);
                         }
                     }
                     if (decimal_flag == 1) {
-                        return new Token(Token.Type.DECIMAL, chars.emit());
+                        return emit(Token.Type.DECIMAL);
                     }
                     else if (decimal_flag >= 2) {
                         throw new LexException("Too many decimals!");
                     }
-                    return new Token(Token.Type.INTEGER, chars.emit());
+                    return emit(Token.Type.INTEGER);
                 }
-                if (chars.peek("e", "[^0-9]") ||
-                        (chars.peek("e") && !(chars.has(2)))) {
+                if (chars.peek(CharClass.EXPONENT, CharClass.NON_DIGIT) ||
+                        (chars.peek(CharClass.EXPONENT) && !(chars.has(2)))) {
                     if (decimal_flag == 1) {
-                        return new Token(Token.Type.DECIMAL, chars.emit());
+                        return emit(Token.Type.DECIMAL);
                     }
-                    return new Token(Token.Type.INTEGER, chars.emit());
+                    return emit(Token.Type.INTEGER);
                 }
-                if (chars.match("e", "[0-9]")) {
-                    while (chars.match("\\+?-?[0-9]+")) {}
+                if (chars.match(CharClass.EXPONENT, CharClass.DIGIT)) {
+                    while (chars.match(CharClass.DIGIT)) {}
                     if (decimal_flag == 1) {
-                        return new Token(Token.Type.DECIMAL, chars.emit());
+                        return emit(Token.Type.DECIMAL);
                     }
                     else if (decimal_flag >= 2) {
                         throw new LexException("Too many decimals!");
                     }
-                    return new Token(Token.Type.INTEGER, chars.emit());
+                    return emit(Token.Type.INTEGER);
                 }
             }
             if (decimal_flag == 1) {
-                return new Token(Token.Type.DECIMAL, chars.emit());
+                return emit(Token.Type.DECIMAL);
             }
             else if (decimal_flag >= 2) {
                 throw new LexException("Too many decimals!");
             }
-            return new Token(Token.Type.INTEGER, chars.emit());
+            return emit(Token.Type.INTEGER);
         }
-        catch (Exception exception) {
+        catch (LexException exception) {
             throw new LexException("invalid syntax!");
         }
     }
 
-    private Token lexCharacter() throws LexException {
+    private Token.Type lexCharacter() throws LexException {
         int char_counter = 0;
-        try {
-            while (chars.match("([^'\\n\\r]|(\\\\[bnrt'\\\"]))")) {
-                char_counter++;
-            }
-            //check if only 1-2 characters (if escape character) and closing '
-            if (chars.match("'") && char_counter <= 2) {
-                return new Token(Token.Type.CHARACTER, chars.emit());
-            }
-            else {
-                throw new LexException("Missing \\'");
-            }
+        while (chars.match(CharClass.CHARACTER_BODY)) {
+            char_counter++;
         }
-        catch (Exception exception) {
-            throw new LexException("Exception Caught!");
+        //check if only 1-2 characters (if escape character) and closing '
+        if (chars.match(CharClass.SINGLE_QUOTE) && char_counter <= 2) {
+            return emit(Token.Type.CHARACTER);
         }
-
+        throw new LexException("Exception Caught!");
     }
 
-    private Token lexString() throws LexException {
-        try {
-            while (chars.match("([^\"\\n\\r]*(\\\\[bnrt\"\\\\])*)*")) {
-                if (chars.match("\\\\")) {
-                    if (chars.match("[bnrt\"\\\\]")) {
-                        continue;
-                    }
-                    throw new LexException("Invalid escape!");
+    private Token.Type lexString() throws LexException {
+        while (chars.match(CharClass.STRING_BODY)) {
+            if (chars.match(CharClass.BACKSLASH)) {
+                if (chars.match(CharClass.STRING_ESCAPE)) {
+                    continue;
                 }
+                throw new LexException("Error in String!");
             }
-            if (chars.match("\"")) {
-                return new Token(Token.Type.STRING, chars.emit());
-            }
-            throw new LexException("No Closing Quote!");
         }
-        catch (Exception exception) {
-            throw new LexException("Error in String!");
+        if (chars.match(CharClass.DOUBLE_QUOTE)) {
+            return emit(Token.Type.STRING);
         }
+        throw new LexException("Error in String!");
     }
 
-    private Token lexEscape() throws LexException {
+    private Token.Type lexEscape() throws LexException {
         throw new LexException("Escaped");
     }
 
-    public Token lexOperator() throws LexException {
-        while (chars.match("[=]?")) {}
-        return new Token(Token.Type.OPERATOR, chars.emit());
+    public Token.Type lexOperator() throws LexException {
+        while (chars.match(CharClass.EQUALS)) {}
+        return emit(Token.Type.OPERATOR);
     }
 
     private void lexWhitespace() {
         chars.length--;
     }
 
-    //submission check
-
-
     /**
      * A helper class for maintaining the state of the character stream (input)
      * and methods for building up token literals.
+     *
+     * <p>Positions are measured in the code units of the underlying input:
+     * chars for {@link StringStream} and {@link ReadableStream}, and bytes for
+     * {@link Utf8Stream}. The
+     * lexer only relies on {@link #has}, {@link #get} and {@link #skip}
+     * counting in characters, so both produce identical tokens.
      */
-    private static final class CharStream {
+    private abstract static class CharStream {
+
+        protected int index = 0;
+        protected int length = 0;
+        private int start = 0;
+        private int end = 0;
+
+        /**
+         * Returns true if there is a character at (index + offset).
+         */
+        public abstract boolean has(int offset);
+
+        /**
+         * Returns the character at (index + offset). Only ASCII characters
+         * need to be exact; any non-ASCII character may be returned as any
+         * other non-ASCII character, since they share the same classes.
+         */
+        public abstract char get(int offset);
+
+        /**
+         * Unconditionally consumes the next characters.
+         */
+        public abstract void skip(int count);
+
+        /**
+         * Returns the absolute input offset of the given buffer index.
+         */
+        protected abstract int position(int index);
+
+        /**
+         * Returns the character at the absolute input offset, which must be
+         * within the last emitted token. As with {@link #get}, only ASCII
+         * characters need to be exact.
+         */
+        protected abstract char at(int position);
+
+        /**
+         * Returns the absolute input offset just past the end of the input.
+         * Only used for resident input.
+         */
+        protected abstract int size();
+
+        /**
+         * Returns a new stream over the same input, starting at the given
+         * buffer index. Only supported for resident input.
+         */
+        protected abstract CharStream fork(int index);
+
+        public abstract String literal(int start, int length);
+
+        /**
+         * The last emitted token as a view of the input, so it can be
+         * classified without building its literal.
+         */
+        public final CharSequence text = new CharSequence() {
+
+            @Override
+            public int length() {
+                return end - start;
+            }
+
+            @Override
+            public char charAt(int index) {
+                return at(start + index);
+            }
+
+            @Override
+            public CharSequence subSequence(int from, int to) {
+                return literal(start + from, to - from);
+            }
+
+            @Override
+            public String toString() {
+                return literal(start, end - start);
+            }
+
+        };
+
+        public boolean literalEquals(int start, int length, String literal) {
+            return literal(start, length).equals(literal);
+        }
+
+        /**
+         * Returns true if the next characters belong to their corresponding
+         * {@link CharClass}. Overloads (rather than varargs) keep this free of
+         * allocation, since it runs several times per character.
+         */
+        public boolean peek(int first) {
+            return has(0) && CharClass.is(get(0), first);
+        }
+
+        public boolean peek(int first, int second) {
+            return has(1) && CharClass.is(get(0), first) && CharClass.is(get(1), second);
+        }
+
+        public boolean peek(int first, int second, int third) {
+            return has(2) && CharClass.is(get(0), first) && CharClass.is(get(1), second)
+                && CharClass.is(get(2), third);
+        }
+
+        /**
+         * Equivalent to peek, but also advances the character stream.
+         */
+        public boolean match(int first) {
+            if (peek(first)) {
+                skip(1);
+                return true;
+            }
+            return false;
+        }
+
+        public boolean match(int first, int second) {
+            if (peek(first, second)) {
+                skip(2);
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Records the span of all characters matched since the last call to
+         * emit(); also resetting the length for subsequent tokens.
+         */
+        public void emit() {
+            start = position(index - length);
+            end = position(index);
+            length = 0;
+        }
+
+    }
+
+    private static final class StringStream extends CharStream {
 
         private final String input;
-        private int index = 0;
-        private int length = 0;
 
-        public CharStream(String input) {
+        public StringStream(String input) {
             this.input = input;
         }
 
+        @Override
         public boolean has(int offset) {
             return index + offset < input.length();
         }
 
+        @Override
+        public char get(int offset) {
+            return input.charAt(index + offset);
+        }
+
+        @Override
+        public void skip(int count) {
+            index += count;
+            length += count;
+        }
+
+        @Override
+        protected int position(int index) {
+            return index;
+        }
+
+        @Override
+        protected char at(int position) {
+            return input.charAt(position);
+        }
+
+        @Override
+        protected int size() {
+            return input.length();
+        }
+
+        @Override
+        protected CharStream fork(int index) {
+            var fork = new StringStream(input);
+            fork.index = index;
+            return fork;
+        }
+
+        @Override
+        public String literal(int start, int length) {
+            return input.substring(start, start + length);
+        }
+
+        @Override
+        public boolean literalEquals(int start, int length, String literal) {
+            return length == literal.length() && input.regionMatches(start, literal, 0, length);
+        }
+
+    }
+
+    /**
+     * Characters are read from the input into a buffer on demand. Before
+     * reading more, everything preceding the literal in progress is discarded,
+     * so the buffer only grows past its initial capacity for a literal that
+     * does not fit in it.
+     */
+    private static final class ReadableStream extends CharStream {
+
+        private static final int CAPACITY = 8192;
+
+        private final Readable input;
+        private char[] buffer = new char[CAPACITY];
+        private CharBuffer view = CharBuffer.wrap(buffer);
+        private int offset = 0;  //input offset of buffer[0]
+        private int limit = 0;
+        private boolean exhausted = false;
+
+        public ReadableStream(Readable input) {
+            this.input = input;
+        }
+
+        @Override
+        public boolean has(int offset) {
+            return index + offset < limit || fill(index + offset);
+        }
+
         /**
-         * Returns true if the next characters match their corresponding
-         * pattern. Each pattern is a regex matching only ONE character!
+         * Reads from the input until the buffer position is available or the
+         * input is exhausted, returning whether the position is available.
          */
-        public boolean peek(String... patterns) {
-            //match on charactercharacter by character
-            if (!has(patterns.length - 1)) {
-                return false;
-            }
-            for (int offset = 0; offset < patterns.length; offset++) {
-                var character = input.charAt(index + offset);
-                if (!String.valueOf(character).matches(patterns[offset])) {
-                    return false;
+        private boolean fill(int position) {
+            while (position >= limit && !exhausted) {
+                if (limit == buffer.length) {
+                    var start = index - length;
+                    if (start > 0) {
+                        System.arraycopy(buffer, start, buffer, 0, limit - start);
+                        offset += start;
+                        limit -= start;
+                        index -= start;
+                        position -= start;
+                    } else {
+                        buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                        view = CharBuffer.wrap(buffer);
+                    }
+                }
+                view.limit(buffer.length).position(limit);
+                try {
+                    var read = input.read(view);
+                    if (read < 0) {
+                        exhausted = true;
+                    } else {
+                        limit += read;
+                    }
+                } catch (IOException exception) {
+                    throw new UncheckedIOException(exception);
                 }
             }
-            return true;
+            return position < limit;
+        }
+
+        @Override
+        public char get(int offset) {
+            return buffer[index + offset];
+        }
+
+        @Override
+        public void skip(int count) {
+            index += count;
+            length += count;
+        }
+
+        @Override
+        protected int position(int index) {
+            return offset + index;
+        }
+
+        @Override
+        protected char at(int position) {
+            return buffer[position - offset];
+        }
+
+        @Override
+        protected int size() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        protected CharStream fork(int index) {
+            throw new UnsupportedOperationException();
         }
 
         /**
-         * Equivalent to peek, but also advances the character stream.
+         * Only the current token is guaranteed to still be buffered.
+         */
+        @Override
+        public String literal(int start, int length) {
+            return new String(buffer, start - offset, length);
+        }
+
+    }
+
+    /**
+     * Lexes UTF-8 bytes in place, with positions measured in bytes. Each
+     * character the lexer sees is one encoded code point, except that a four
+     * byte sequence is two characters (matching its two UTF-16 surrogates) so
+     * that lengths agree exactly with lexing the decoded string.
+     */
+    private static final class Utf8Stream extends CharStream {
+
+        private final ByteBuffer input;
+        private final int limit;
+
+        public Utf8Stream(ByteBuffer input) {
+            this.input = input;
+            this.index = input.position();
+            this.limit = input.limit();
+        }
+
+        /**
+         * Returns the buffer index of the character at (index + offset), or
+         * the limit if the input ends first.
          */
-        public boolean match(String... patterns) {
-            var peek = peek(patterns);
-            if (peek) {
-                index += patterns.length;
-                length += patterns.length;
+        private int locate(int offset) {
+            var position = index;
+            for (int i = 0; i < offset && position < limit; i++) {
+                position += width(input.get(position));
             }
-            return peek;
+            return Math.min(position, limit);
         }
 
         /**
-         * Returns the literal built by all characters matched since the last
-         * call to emit(); also resetting the length for subsequent tokens.
+         * Returns the number of bytes making up the character starting with
+         * the given byte. A continuation byte can only start a character as
+         * the second half of a four byte sequence.
          */
-        public String emit() {
-            var literal = input.substring(index - length, index);
-            length = 0;
-            return literal;
+        private static int width(byte lead) {
+            if (lead >= 0) {
+                return 1;
+            } else if ((lead & 0xF0) == 0xE0) {
+                return 3;
+            }
+            return 2;  //two byte sequences, and either half of a four byte sequence
+        }
+
+        @Override
+        public boolean has(int offset) {
+            return locate(offset) < limit;
+        }
+
+        @Override
+        public char get(int offset) {
+            var lead = input.get(locate(offset));
+            return lead >= 0 ? (char) lead : '\u0080';
+        }
+
+        @Override
+        public void skip(int count) {
+            var position = locate(count);
+            length += position - index;
+            index = position;
+        }
+
+        @Override
+        protected int position(int index) {
+            return index;
+        }
+
+        @Override
+        protected char at(int position) {
+            var lead = input.get(position);
+            return lead >= 0 ? (char) lead : '\u0080';
+        }
+
+        @Override
+        protected int size() {
+            return limit;
+        }
+
+        @Override
+        protected CharStream fork(int index) {
+            var fork = new Utf8Stream(input);
+            fork.index = index;
+            return fork;
+        }
+
+        /**
+         * A span can begin or end between the two halves of a four byte
+         * sequence (for example, a lone surrogate lexed as an operator). The
+         * whole sequence is decoded then, and the other surrogate dropped.
+         */
+        @Override
+        public String literal(int start, int length) {
+            var end = start + length;
+            var split = (input.get(start) & 0xC0) == 0x80 ? 2 : 0;
+            var extra = end < limit && (input.get(end) & 0xC0) == 0x80 ? 2 : 0;
+            var decoded = StandardCharsets.UTF_8.decode(input.slice(start - split, length + split + extra));
+            return decoded.subSequence(split / 2, decoded.length() - extra / 2).toString();
+        }
+
+        @Override
+        public boolean literalEquals(int start, int length, String literal) {
+            for (int i = 0; i < literal.length(); i++) {
+                if (literal.charAt(i) >= 0x80) {
+                    return super.literalEquals(start, length, literal);
+                }
+            }
+            //an ASCII literal is encoded as exactly one byte per char
+            if (length != literal.length()) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (input.get(start + i) != literal.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
         }
 
     }
@@ -0,0 +1,77 @@
+package plc.project.lexer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Maps input offsets, as found in tokens and exceptions, to lines and columns.
+ * Only offsets are recorded while lexing and parsing; an index of line starts
+ * is built from the input when a diagnostic actually needs a position, and
+ * each lookup is then a binary search.
+ *
+ * <p>Lines and columns are 1-based. Columns count the same units as offsets:
+ * chars for a {@link String}, and bytes for UTF-8 input.
+ */
+public final class LineIndex {
+
+    private final int[] starts;
+    private final int length;
+
+    private LineIndex(int[] starts, int length) {
+        this.starts = starts;
+        this.length = length;
+    }
+
+    public static LineIndex of(CharSequence input) {
+        var starts = new int[16];
+        var lines = 1;
+        for (int i = 0; i < input.length(); i++) {
+            if (input.charAt(i) == '\n') {
+                if (lines == starts.length) {
+                    starts = Arrays.copyOf(starts, lines * 2);
+                }
+                starts[lines++] = i + 1;
+            }
+        }
+        return new LineIndex(Arrays.copyOf(starts, lines), input.length());
+    }
+
+    /**
+     * Indexes the UTF-8 bytes of the buffer, using absolute buffer offsets as
+     * lexed by {@link Lexer#Lexer(ByteBuffer)}.
+     */
+    public static LineIndex of(ByteBuffer input) {
+        var starts = new int[16];
+        starts[0] = input.position();
+        var lines = 1;
+        for (int i = input.position(); i < input.limit(); i++) {
+            if (input.get(i) == '\n') {
+                if (lines == starts.length) {
+                    starts = Arrays.copyOf(starts, lines * 2);
+                }
+                starts[lines++] = i + 1;
+            }
+        }
+        return new LineIndex(Arrays.copyOf(starts, lines), input.limit());
+    }
+
+    public int line(int offset) {
+        checkArgument(offset >= starts[0] && offset <= length, "Offset %s is outside the input.", offset);
+        var index = Arrays.binarySearch(starts, offset);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    public int column(int offset) {
+        return offset - starts[line(offset) - 1] + 1;
+    }
+
+    /**
+     * Returns the position of the offset as {@code line:column}.
+     */
+    public String format(int offset) {
+        return line(offset) + ":" + column(offset);
+    }
+
+}
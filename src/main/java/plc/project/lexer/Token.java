@@ -1,5 +1,9 @@
 package plc.project.lexer;
 
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.ArrayList;
+
 public record Token(
     Type type,
     String literal
@@ -14,4 +18,117 @@ public record Token(
         OPERATOR
     }
 
+    /**
+     * A finer classification than {@link Type}, distinguishing each keyword
+     * and operator the parser gives meaning to. The kind of a token is fully
+     * determined by its type and literal, and is assigned by the lexer so the
+     * parser can dispatch on it instead of comparing literal strings. Tokens
+     * without a special meaning have the generic kind named after their type.
+     */
+    public enum Kind {
+        IDENTIFIER(Type.IDENTIFIER, null),
+        INTEGER(Type.INTEGER, null),
+        DECIMAL(Type.DECIMAL, null),
+        CHARACTER(Type.CHARACTER, null),
+        STRING(Type.STRING, null),
+        OPERATOR(Type.OPERATOR, null),
+
+        LET(Type.IDENTIFIER, "LET"),
+        DEF(Type.IDENTIFIER, "DEF"),
+        IF(Type.IDENTIFIER, "IF"),
+        ELSE(Type.IDENTIFIER, "ELSE"),
+        FOR(Type.IDENTIFIER, "FOR"),
+        IN(Type.IDENTIFIER, "IN"),
+        DO(Type.IDENTIFIER, "DO"),
+        END(Type.IDENTIFIER, "END"),
+        RETURN(Type.IDENTIFIER, "RETURN"),
+        OBJECT(Type.IDENTIFIER, "OBJECT"),
+        AND(Type.IDENTIFIER, "AND"),
+        OR(Type.IDENTIFIER, "OR"),
+        NIL(Type.IDENTIFIER, "NIL"),
+        TRUE(Type.IDENTIFIER, "TRUE"),
+        FALSE(Type.IDENTIFIER, "FALSE"),
+
+        EQUALS(Type.OPERATOR, "="),
+        EQUALS_EQUALS(Type.OPERATOR, "=="),
+        NOT_EQUALS(Type.OPERATOR, "!="),
+        LESS(Type.OPERATOR, "<"),
+        LESS_EQUALS(Type.OPERATOR, "<="),
+        GREATER(Type.OPERATOR, ">"),
+        GREATER_EQUALS(Type.OPERATOR, ">="),
+        PLUS(Type.OPERATOR, "+"),
+        MINUS(Type.OPERATOR, "-"),
+        ASTERISK(Type.OPERATOR, "*"),
+        SLASH(Type.OPERATOR, "/"),
+        PERIOD(Type.OPERATOR, "."),
+        COMMA(Type.OPERATOR, ","),
+        SEMICOLON(Type.OPERATOR, ";"),
+        OPEN_PAREN(Type.OPERATOR, "("),
+        CLOSE_PAREN(Type.OPERATOR, ")");
+
+        private static final Kind[] VALUES = values();
+        private static final int LONGEST = 6;
+        private static final Kind[][] BY_LENGTH = new Kind[LONGEST + 1][];
+
+        static {
+            for (int length = 0; length <= LONGEST; length++) {
+                var kinds = new ArrayList<Kind>();
+                for (var kind : VALUES) {
+                    if (kind.literal != null && kind.literal.length() == length) {
+                        kinds.add(kind);
+                    }
+                }
+                BY_LENGTH[length] = kinds.toArray(Kind[]::new);
+            }
+        }
+
+        private final Type type;
+        private final @Nullable String literal;
+
+        Kind(Type type, @Nullable String literal) {
+            this.type = type;
+            this.literal = literal;
+        }
+
+        public Type type() {
+            return type;
+        }
+
+        /**
+         * Returns the literal of a keyword or operator kind, or {@code null}
+         * for the generic kinds.
+         */
+        public @Nullable String literal() {
+            return literal;
+        }
+
+        /**
+         * Returns the kind with the given ordinal, as stored by
+         * {@link TokenBuffer}.
+         */
+        static Kind of(int ordinal) {
+            return VALUES[ordinal];
+        }
+
+        /**
+         * Classifies a token. The literal is only read, so the lexer can pass
+         * a view of its input rather than building a string.
+         */
+        public static Kind of(Type type, CharSequence literal) {
+            if ((type == Type.IDENTIFIER || type == Type.OPERATOR) && literal.length() <= LONGEST) {
+                for (var kind : BY_LENGTH[literal.length()]) {
+                    if (kind.type == type && kind.literal.contentEquals(literal)) {
+                        return kind;
+                    }
+                }
+            }
+            return VALUES[type.ordinal()];
+        }
+
+    }
+
+    public Kind kind() {
+        return Kind.of(type, literal);
+    }
+
 }
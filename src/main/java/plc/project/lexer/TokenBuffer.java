@@ -0,0 +1,204 @@
+package plc.project.lexer;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+
+/**
+ * A fully lexed sequence of tokens stored as parallel arrays of kind, start
+ * offset and length instead of {@link Token} records. Literals stay as spans
+ * of the source's input and are only built by {@link #literal(int)}, so the
+ * buffer costs 12 bytes per token on top of the shared input, and scanning
+ * token kinds walks a single contiguous array.
+ *
+ * <p>Buffers are built from a {@link TokenSource#resident()} source, such as a
+ * {@link Lexer} over a {@link String} or a memory-mapped file, and can be
+ * parsed directly with {@link plc.project.parser.Parser#Parser(TokenBuffer)}.
+ *
+ * <p>After an edit to the input, {@link #relex} produces the new buffer by
+ * lexing only the tokens around the edit.
+ */
+public final class TokenBuffer {
+
+    /**
+     * The number of characters past the end of a token which may have
+     * decided its type (for instance, {@code 1.} followed by a digit).
+     */
+    private static final int LOOKAHEAD = 3;
+
+    /**
+     * The result of {@link #relex}: tokens {@code [start, start + inserted)}
+     * of the new buffer replace tokens {@code [start, start + removed)} of the
+     * old buffer, and all other tokens are unchanged apart from their offsets.
+     */
+    public record Edit(TokenBuffer tokens, int start, int removed, int inserted) {}
+
+    private final TokenSource source;
+    private int[] kinds;
+    private int[] starts;
+    private int[] lengths;
+    private int size = 0;
+
+    private TokenBuffer(TokenSource source, int capacity) {
+        this.source = source;
+        this.kinds = new int[capacity];
+        this.starts = new int[capacity];
+        this.lengths = new int[capacity];
+    }
+
+    /**
+     * Lexes all remaining tokens of the source into a new buffer.
+     */
+    public static TokenBuffer lex(TokenSource source) throws LexException {
+        checkArgument(source.resident(), "A TokenBuffer requires a resident token source.");
+        var buffer = new TokenBuffer(source, 64);
+        for (var kind = source.advance(); kind != null; kind = source.advance()) {
+            buffer.add(kind, source.start(), source.length());
+        }
+        return buffer;
+    }
+
+    /**
+     * Returns the tokens of the given input, which is this buffer's input
+     * with {@code removed} chars at {@code offset} replaced by
+     * {@code inserted} chars. Lexing restarts after the last token the edit
+     * cannot have affected, and stops once a token ends where one previously
+     * ended after the edit, since the lexer is then in the same state as
+     * before and all remaining tokens can be reused. This buffer must have
+     * been lexed from a {@link String}, so that offsets are char indices.
+     */
+    public Edit relex(String input, int offset, int removed, int inserted) throws LexException {
+        checkPositionIndexes(offset, offset + inserted, input.length());
+        var delta = inserted - removed;
+        var first = 0;  //number of leading tokens kept, found by binary search
+        for (int low = 0, high = size; low < high; ) {
+            var middle = (low + high) >>> 1;
+            if (end(middle) + LOOKAHEAD <= offset) {
+                first = middle + 1;
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        var lexer = new Lexer(input, first == 0 ? 0 : end(first - 1));
+        var buffer = new TokenBuffer(lexer, size + 64);
+        buffer.copy(this, 0, first, 0);
+        var old = first;
+        for (var kind = lexer.advance(); kind != null; kind = lexer.advance()) {
+            buffer.add(kind, lexer.start(), lexer.length());
+            var end = lexer.start() + lexer.length();
+            if (end >= offset + inserted) {
+                while (old < size && end(old) < end - delta) {
+                    old++;
+                }
+                if (old < size && end(old) == end - delta) {
+                    var relexed = buffer.size - first;
+                    buffer.copy(this, old + 1, size, delta);
+                    return new Edit(buffer, first, old + 1 - first, relexed);
+                }
+            }
+        }
+        return new Edit(buffer, first, size - first, buffer.size - first);
+    }
+
+    private int end(int index) {
+        return starts[index] + lengths[index];
+    }
+
+    /**
+     * Appends tokens {@code [from, to)} of another buffer over the same input,
+     * moving their offsets by {@code delta}.
+     */
+    private void copy(TokenBuffer other, int from, int to, int delta) {
+        var count = to - from;
+        if (size + count > kinds.length) {
+            var capacity = Math.max(size + count, kinds.length * 2);
+            kinds = Arrays.copyOf(kinds, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+        System.arraycopy(other.kinds, from, kinds, size, count);
+        System.arraycopy(other.lengths, from, lengths, size, count);
+        for (int i = 0; i < count; i++) {
+            starts[size + i] = other.starts[from + i] + delta;
+        }
+        size += count;
+    }
+
+    /**
+     * Concatenates buffers lexed from consecutive parts of the same input.
+     */
+    static TokenBuffer join(TokenSource source, List<TokenBuffer> parts) {
+        var buffer = new TokenBuffer(source, Math.max(parts.stream().mapToInt(TokenBuffer::size).sum(), 1));
+        for (var part : parts) {
+            System.arraycopy(part.kinds, 0, buffer.kinds, buffer.size, part.size);
+            System.arraycopy(part.starts, 0, buffer.starts, buffer.size, part.size);
+            System.arraycopy(part.lengths, 0, buffer.lengths, buffer.size, part.size);
+            buffer.size += part.size;
+        }
+        return buffer;
+    }
+
+    private void add(Token.Kind kind, int start, int length) {
+        if (size == kinds.length) {
+            kinds = Arrays.copyOf(kinds, size * 2);
+            starts = Arrays.copyOf(starts, size * 2);
+            lengths = Arrays.copyOf(lengths, size * 2);
+        }
+        kinds[size] = kind.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Token.Kind kind(int index) {
+        checkElementIndex(index, size);
+        return Token.Kind.of(kinds[index]);
+    }
+
+    public Token.Type type(int index) {
+        return kind(index).type();
+    }
+
+    /**
+     * Returns the start offset of the token, as given by its source.
+     */
+    public int start(int index) {
+        checkElementIndex(index, size);
+        return starts[index];
+    }
+
+    public int length(int index) {
+        checkElementIndex(index, size);
+        return lengths[index];
+    }
+
+    /**
+     * Returns the literal of the token, building it from the source input.
+     */
+    public String literal(int index) {
+        checkElementIndex(index, size);
+        return source.literal(starts[index], lengths[index]);
+    }
+
+    /**
+     * Returns true if the literal of the token equals the given literal,
+     * without building it where the source allows.
+     */
+    public boolean literalEquals(int index, String literal) {
+        checkElementIndex(index, size);
+        return source.literalEquals(starts[index], lengths[index], literal);
+    }
+
+    public Token get(int index) {
+        return new Token(type(index), literal(index));
+    }
+
+}
@@ -0,0 +1,101 @@
+package plc.project.lexer;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.List;
+
+/**
+ * A pull-based source of tokens. Consumers such as the parser request tokens
+ * one at a time as they need them, so a {@link Lexer} reading from a stream
+ * never has to hold the entire input or token list in memory.
+ *
+ * <p>A source works like a cursor: {@link #advance()} moves to the next token
+ * and returns its {@link Token.Kind}, after which {@link #start()} and {@link #length()}
+ * describe where the token is. Literals are only built when requested via
+ * {@link #literal(int, int)}, which lets sources over resident input (such as
+ * a memory-mapped file) avoid creating strings the consumer never reads.
+ */
+public interface TokenSource {
+
+    /**
+     * Advances to the next token and returns its kind, or {@code null} once
+     * the input is exhausted. The kind also determines the token's type.
+     */
+    Token.@Nullable Kind advance() throws LexException;
+
+    /**
+     * Returns the start offset of the current token. Offsets are only
+     * meaningful to the source itself and to {@link #literal(int, int)}.
+     */
+    int start();
+
+    /**
+     * Returns the length of the current token, in the same units as
+     * {@link #start()}.
+     */
+    int length();
+
+    /**
+     * Returns the literal of the token with the given start and length. This
+     * is always valid for the current token, and for earlier tokens only if
+     * the source is {@link #resident()}.
+     */
+    String literal(int start, int length);
+
+    /**
+     * Returns true if {@link #literal(int, int)} equals the given literal,
+     * which sources may answer without building the literal.
+     */
+    default boolean literalEquals(int start, int length, String literal) {
+        return literal(start, length).equals(literal);
+    }
+
+    /**
+     * Returns true if the literals of earlier tokens remain available after
+     * advancing, allowing consumers to defer building them.
+     */
+    default boolean resident() {
+        return true;
+    }
+
+    /**
+     * Returns the next token, or {@code null} once the input is exhausted.
+     */
+    default @Nullable Token next() throws LexException {
+        var kind = advance();
+        return kind != null ? new Token(kind.type(), literal(start(), length())) : null;
+    }
+
+    /**
+     * Returns a source over an already lexed list of tokens, where the start
+     * of a token is its index in the list.
+     */
+    static TokenSource of(List<Token> tokens) {
+        return new TokenSource() {
+
+            private int index = -1;
+
+            @Override
+            public Token.@Nullable Kind advance() {
+                return ++index < tokens.size() ? tokens.get(index).kind() : null;
+            }
+
+            @Override
+            public int start() {
+                return index;
+            }
+
+            @Override
+            public int length() {
+                return tokens.get(index).literal().length();
+            }
+
+            @Override
+            public String literal(int start, int length) {
+                return tokens.get(start).literal();
+            }
+
+        };
+    }
+
+}
@@ -0,0 +1,303 @@
+package plc.project.optimizer;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import plc.project.analyzer.Ir;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Folds constant expressions in an analyzed source, so that they are not
+ * evaluated again on every execution:
+ *
+ * <ul>
+ *     <li>Binary expressions of literals are replaced by their value, computed
+ *     exactly as the {@link plc.project.evaluator.Evaluator} would: integers
+ *     with {@link BigInteger}, decimals with {@link BigDecimal} (division
+ *     rounding HALF_EVEN to the scale of the left operand), and strings by
+ *     concatenation. Expressions the evaluator would reject, such as division
+ *     by zero, are left to fail at runtime.</li>
+ *     <li>Groups of literals are replaced by the literal.</li>
+ *     <li>Variables bound by a {@code LET} to a literal of its declared type,
+ *     and never assigned anywhere in the source, are replaced by the literal.
+ *     Functions are called in a child of the caller's scope, so bindings are
+ *     not propagated into function or method bodies.</li>
+ *     <li>{@code IF} statements with a literal condition are replaced by the
+ *     branch taken, which is inlined if it declares nothing (since it would
+ *     otherwise run in a scope of its own) and removed if empty.</li>
+ * </ul>
+ */
+public final class ConstantFolder implements Pass {
+
+    private final Set<String> assigned = new HashSet<>();
+    private int folded;
+    private int propagated;
+    private int branches;
+
+    @Override
+    public String name() {
+        return "constant-folding";
+    }
+
+    @Override
+    public Ir.Source apply(Ir.Source source) {
+        assigned.clear();
+        folded = 0;
+        propagated = 0;
+        branches = 0;
+        source.statements().forEach(this::collect);
+        return new Ir.Source(block(source.statements(), new HashMap<>()));
+    }
+
+    /**
+     * Returns the number of binary and group expressions replaced by literals
+     * ({@code folded}), variables replaced by the literal they are bound to
+     * ({@code propagated}), and {@code IF} statements replaced by their branch
+     * or with the branch not taken removed ({@code branches}).
+     */
+    @Override
+    public Map<String, Integer> changes() {
+        var changes = new LinkedHashMap<String, Integer>();
+        PassManager.count(changes, "folded", folded);
+        PassManager.count(changes, "propagated", propagated);
+        PassManager.count(changes, "branches", branches);
+        return changes;
+    }
+
+    /**
+     * Records the names of the variables assigned in the statement.
+     */
+    private void collect(Ir.Stmt statement) {
+        switch (statement) {
+            case Ir.Stmt.Let let -> let.value().ifPresent(this::collect);
+            case Ir.Stmt.Def def -> def.body().forEach(this::collect);
+            case Ir.Stmt.If ifStmt -> {
+                collect(ifStmt.condition());
+                ifStmt.thenBody().forEach(this::collect);
+                ifStmt.elseBody().forEach(this::collect);
+            }
+            case Ir.Stmt.For forStmt -> {
+                collect(forStmt.expression());
+                forStmt.body().forEach(this::collect);
+            }
+            case Ir.Stmt.Return returnStmt -> returnStmt.value().ifPresent(this::collect);
+            case Ir.Stmt.Expression expression -> collect(expression.expression());
+            case Ir.Stmt.Assignment.Variable assignment -> {
+                assigned.add(assignment.variable().name());
+                collect(assignment.value());
+            }
+            case Ir.Stmt.Assignment.Property assignment -> {
+                collect(assignment.property());
+                collect(assignment.value());
+            }
+        }
+    }
+
+    private void collect(Ir.Expr expr) {
+        switch (expr) {
+            case Ir.Expr.Literal _, Ir.Expr.Variable _ -> {}
+            case Ir.Expr.Group group -> collect(group.expression());
+            case Ir.Expr.Binary binary -> {
+                collect(binary.left());
+                collect(binary.right());
+            }
+            case Ir.Expr.Property property -> collect(property.receiver());
+            case Ir.Expr.Function function -> function.arguments().forEach(this::collect);
+            case Ir.Expr.Method method -> {
+                collect(method.receiver());
+                method.arguments().forEach(this::collect);
+            }
+            case Ir.Expr.ObjectExpr object -> {
+                object.fields().forEach(this::collect);
+                object.methods().forEach(this::collect);
+            }
+        }
+    }
+
+    /**
+     * Folds the statements of a scope, given the constants visible in it,
+     * which the statements' own declarations update.
+     */
+    private List<Ir.Stmt> block(List<Ir.Stmt> statements, Map<String, Ir.Expr.Literal> constants) {
+        var result = new ArrayList<Ir.Stmt>();
+        for (var stmt : statements) {
+            switch (stmt) {
+                case Ir.Stmt.Let let -> result.add(let(let, constants));
+                case Ir.Stmt.Def def -> {
+                    constants.remove(def.name());
+                    result.add(def(def));
+                }
+                case Ir.Stmt.If ifStmt -> {
+                    var condition = expr(ifStmt.condition(), constants);
+                    if (condition instanceof Ir.Expr.Literal literal && literal.value() instanceof Boolean taken) {
+                        var body = block(taken ? ifStmt.thenBody() : ifStmt.elseBody(), new HashMap<>(constants));
+                        if (body.stream().noneMatch(ConstantFolder::declares)) {
+                            branches++;
+                            result.addAll(body);
+                        } else {
+                            //only a change if the other branch was removed, so a kept IF is not counted again
+                            if (!(taken ? ifStmt.elseBody() : ifStmt.thenBody()).isEmpty()) {
+                                branches++;
+                            }
+                            result.add(new Ir.Stmt.If(condition, taken ? body : List.of(), taken ? List.of() : body));
+                        }
+                    } else {
+                        result.add(new Ir.Stmt.If(condition,
+                            block(ifStmt.thenBody(), new HashMap<>(constants)),
+                            block(ifStmt.elseBody(), new HashMap<>(constants))));
+                    }
+                }
+                case Ir.Stmt.For forStmt -> {
+                    var expression = expr(forStmt.expression(), constants);
+                    var inner = new HashMap<>(constants);
+                    inner.remove(forStmt.name());
+                    result.add(new Ir.Stmt.For(forStmt.name(), forStmt.type(), expression, block(forStmt.body(), inner)));
+                }
+                case Ir.Stmt.Return returnStmt -> result.add(new Ir.Stmt.Return(returnStmt.value().map(value -> expr(value, constants))));
+                case Ir.Stmt.Expression expression -> result.add(new Ir.Stmt.Expression(expr(expression.expression(), constants)));
+                case Ir.Stmt.Assignment.Variable assignment -> result.add(new Ir.Stmt.Assignment.Variable(assignment.variable(), expr(assignment.value(), constants)));
+                case Ir.Stmt.Assignment.Property assignment -> {
+                    var property = assignment.property();
+                    var receiver = expr(property.receiver(), constants);
+                    result.add(new Ir.Stmt.Assignment.Property(
+                        new Ir.Expr.Property(receiver, property.name(), property.type()),
+                        expr(assignment.value(), constants)));
+                }
+            }
+        }
+        return result;
+    }
+
+    private Ir.Stmt.Let let(Ir.Stmt.Let let, Map<String, Ir.Expr.Literal> constants) {
+        var value = let.value().map(initializer -> expr(initializer, constants));
+        constants.remove(let.name()); //shadows any outer binding
+        if (value.isPresent() && value.get() instanceof Ir.Expr.Literal literal
+                && literal.type().equals(let.type()) && !assigned.contains(let.name())) {
+            constants.put(let.name(), literal);
+        }
+        return new Ir.Stmt.Let(let.name(), let.type(), value);
+    }
+
+    private Ir.Stmt.Def def(Ir.Stmt.Def def) {
+        return new Ir.Stmt.Def(def.name(), def.parameters(), def.returns(), block(def.body(), new HashMap<>()));
+    }
+
+    /**
+     * Returns true if the statement defines a variable in the scope it runs in.
+     */
+    private static boolean declares(Ir.Stmt stmt) {
+        return stmt instanceof Ir.Stmt.Let || stmt instanceof Ir.Stmt.Def;
+    }
+
+    private Ir.Expr expr(Ir.Expr expr, Map<String, Ir.Expr.Literal> constants) {
+        return switch (expr) {
+            case Ir.Expr.Literal literal -> literal;
+            case Ir.Expr.Group group -> {
+                var inner = expr(group.expression(), constants);
+                if (inner instanceof Ir.Expr.Literal) {
+                    folded++;
+                    yield inner;
+                }
+                yield new Ir.Expr.Group(inner);
+            }
+            case Ir.Expr.Binary binary -> {
+                var left = expr(binary.left(), constants);
+                var right = expr(binary.right(), constants);
+                if (left instanceof Ir.Expr.Literal l && right instanceof Ir.Expr.Literal r) {
+                    var value = fold(binary.operator(), l.value(), r.value());
+                    if (value != null) {
+                        folded++;
+                        yield new Ir.Expr.Literal(value, binary.type());
+                    }
+                }
+                yield new Ir.Expr.Binary(binary.operator(), left, right, binary.type());
+            }
+            case Ir.Expr.Variable variable -> {
+                var literal = constants.get(variable.name());
+                if (literal != null) {
+                    propagated++;
+                    yield literal;
+                }
+                yield variable;
+            }
+            case Ir.Expr.Property property -> new Ir.Expr.Property(expr(property.receiver(), constants), property.name(), property.type());
+            case Ir.Expr.Function function -> new Ir.Expr.Function(function.name(), exprs(function.arguments(), constants), function.type());
+            case Ir.Expr.Method method -> new Ir.Expr.Method(expr(method.receiver(), constants), method.name(),
+                exprs(method.arguments(), constants), method.type());
+            case Ir.Expr.ObjectExpr object -> {
+                //fields are evaluated in the object's scope, where each shadows any outer binding
+                var inner = new HashMap<>(constants);
+                var fields = new ArrayList<Ir.Stmt.Let>();
+                for (var field : object.fields()) {
+                    fields.add(new Ir.Stmt.Let(field.name(), field.type(), field.value().map(value -> expr(value, inner))));
+                    inner.remove(field.name());
+                }
+                var methods = object.methods().stream().map(this::def).toList();
+                yield new Ir.Expr.ObjectExpr(object.name(), fields, methods, object.type());
+            }
+        };
+    }
+
+    private List<Ir.Expr> exprs(List<Ir.Expr> exprs, Map<String, Ir.Expr.Literal> constants) {
+        var result = new ArrayList<Ir.Expr>(exprs.size());
+        for (var expr : exprs) {
+            result.add(expr(expr, constants));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the value of the operator applied to the values of two literals,
+     * or null if it should not be folded.
+     */
+    static @Nullable Object fold(String operator, @Nullable Object left, @Nullable Object right) {
+        if (left instanceof BigInteger l && right instanceof BigInteger r) {
+            return switch (operator) {
+                case "+" -> l.add(r);
+                case "-" -> l.subtract(r);
+                case "*" -> l.multiply(r);
+                case "/" -> r.signum() != 0 ? l.divide(r) : null;
+                default -> compare(operator, l.compareTo(r), l.equals(r));
+            };
+        } else if (left instanceof BigDecimal l && right instanceof BigDecimal r) {
+            return switch (operator) {
+                case "+" -> l.add(r);
+                case "-" -> l.subtract(r);
+                case "*" -> l.multiply(r);
+                case "/" -> r.signum() != 0 ? l.divide(r, RoundingMode.HALF_EVEN) : null;
+                default -> compare(operator, l.compareTo(r), l.equals(r));
+            };
+        } else if (left instanceof Boolean l && right instanceof Boolean r) {
+            return switch (operator) {
+                case "AND" -> l && r;
+                case "OR" -> l || r;
+                default -> null;
+            };
+        } else if (operator.equals("+") && right != null
+                && (left instanceof String || (right instanceof String && (left instanceof BigInteger || left instanceof BigDecimal)))) {
+            return left.toString() + right;
+        }
+        return null;
+    }
+
+    private static @Nullable Boolean compare(String operator, int comparison, boolean equal) {
+        return switch (operator) {
+            case "<" -> comparison < 0;
+            case "<=" -> comparison <= 0;
+            case ">" -> comparison > 0;
+            case ">=" -> comparison >= 0;
+            case "==" -> equal;
+            case "!=" -> !equal;
+            default -> null;
+        };
+    }
+
+}
@@ -0,0 +1,300 @@
+package plc.project.optimizer;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import plc.project.analyzer.Ir;
+import plc.project.analyzer.Type;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Removes code which cannot affect a program, treating the source as the
+ * whole program:
+ *
+ * <ul>
+ *     <li>Definitions which are never used: {@code DEF}s, and {@code LET}s
+ *     whose value is {@link #pure} (a {@code LET} with any other value is
+ *     replaced by its value, which must still be evaluated).</li>
+ *     <li>Statements after a {@code RETURN}, or after an {@code IF} whose
+ *     branches both return.</li>
+ *     <li>{@code IF} statements with two empty branches, and {@code FOR}
+ *     loops with an empty body, keeping the condition or iterable if it is
+ *     not pure.</li>
+ * </ul>
+ *
+ * <p>Functions are called in a child of the caller's scope, so a name may
+ * refer to a definition anywhere in the program. Definitions are therefore
+ * used by name: starting from the code which always runs, each name
+ * referenced makes every definition of that name used, along with the
+ * references in its body or value, until no more are found. A function only
+ * referenced from its own body, or from other unused definitions, is removed.
+ * Object fields and methods are used by property, and are never removed.
+ */
+public final class DeadCodeEliminator implements Pass {
+
+    private final Map<String, List<Ir.Stmt>> definitions = new HashMap<>();
+    private final Set<String> used = new HashSet<>();
+    private final ArrayDeque<String> pending = new ArrayDeque<>();
+    private int removed;
+    private int unreachable;
+    private int branches;
+
+    @Override
+    public String name() {
+        return "dead-code";
+    }
+
+    @Override
+    public Ir.Source apply(Ir.Source source) {
+        removed = 0;
+        unreachable = 0;
+        branches = 0;
+        definitions.clear();
+        used.clear();
+        source.statements().forEach(this::define);
+        source.statements().forEach(this::use);
+        while (!pending.isEmpty()) {
+            for (var definition : definitions.getOrDefault(pending.pop(), List.of())) {
+                switch (definition) {
+                    case Ir.Stmt.Def def -> def.body().forEach(this::use);
+                    case Ir.Stmt.Let let -> let.value().ifPresent(this::use);
+                    default -> throw new AssertionError(definition);
+                }
+            }
+        }
+        return new Ir.Source(block(source.statements()));
+    }
+
+    /**
+     * Returns the number of unused definitions removed ({@code definitions}),
+     * unreachable statements removed ({@code unreachable}), and empty
+     * {@code IF} and {@code FOR} statements removed ({@code branches}).
+     */
+    @Override
+    public Map<String, Integer> changes() {
+        var changes = new LinkedHashMap<String, Integer>();
+        PassManager.count(changes, "definitions", removed);
+        PassManager.count(changes, "unreachable", unreachable);
+        PassManager.count(changes, "branches", branches);
+        return changes;
+    }
+
+    /**
+     * Returns true if evaluating the expression has no effects and cannot
+     * fail, so it can be removed if its value is unused. Calls, property
+     * accesses and operators the evaluator may reject (such as division) are
+     * not pure.
+     */
+    static boolean pure(Ir.Expr expr) {
+        return switch (expr) {
+            case Ir.Expr.Literal _, Ir.Expr.Variable _ -> true;
+            case Ir.Expr.Group group -> pure(group.expression());
+            case Ir.Expr.Binary binary -> pure(binary.left()) && pure(binary.right()) && switch (binary.operator()) {
+                case "+", "-", "*", "<", "<=", ">", ">=", "==", "!=" -> numeric(binary.left().type(), binary.right().type());
+                case "AND", "OR" -> binary.left().type().equals(Type.BOOLEAN) && binary.right().type().equals(Type.BOOLEAN);
+                default -> false;
+            };
+            case Ir.Expr.ObjectExpr object -> object.fields().stream().allMatch(field -> field.value().map(DeadCodeEliminator::pure).orElse(true));
+            case Ir.Expr.Property _, Ir.Expr.Function _, Ir.Expr.Method _ -> false;
+        };
+    }
+
+    private static boolean numeric(Type left, Type right) {
+        return left.equals(right) && (left.equals(Type.INTEGER) || left.equals(Type.DECIMAL));
+    }
+
+    /**
+     * Records the definitions in the statement whose bodies or values only
+     * run if they are used, including those within other definitions.
+     */
+    private void define(Ir.Stmt statement) {
+        switch (statement) {
+            case Ir.Stmt.Let let -> {
+                if (let.value().isEmpty() || pure(let.value().get())) {
+                    definitions.computeIfAbsent(let.name(), _ -> new ArrayList<>()).add(let);
+                }
+            }
+            case Ir.Stmt.Def def -> {
+                definitions.computeIfAbsent(def.name(), _ -> new ArrayList<>()).add(def);
+                def.body().forEach(this::define);
+            }
+            case Ir.Stmt.If ifStmt -> {
+                ifStmt.thenBody().forEach(this::define);
+                ifStmt.elseBody().forEach(this::define);
+            }
+            case Ir.Stmt.For forStmt -> forStmt.body().forEach(this::define);
+            case Ir.Stmt.Return _, Ir.Stmt.Expression _, Ir.Stmt.Assignment _ -> {}
+        }
+    }
+
+    /**
+     * Records the names referenced by the statement when it runs, leaving
+     * the bodies and values of definitions until they are used.
+     */
+    private void use(Ir.Stmt statement) {
+        switch (statement) {
+            case Ir.Stmt.Let let -> {
+                if (let.value().isPresent() && !pure(let.value().get())) {
+                    use(let.value().get());
+                }
+            }
+            case Ir.Stmt.Def _ -> {}
+            case Ir.Stmt.If ifStmt -> {
+                use(ifStmt.condition());
+                ifStmt.thenBody().forEach(this::use);
+                ifStmt.elseBody().forEach(this::use);
+            }
+            case Ir.Stmt.For forStmt -> {
+                use(forStmt.expression());
+                forStmt.body().forEach(this::use);
+            }
+            case Ir.Stmt.Return returnStmt -> returnStmt.value().ifPresent(this::use);
+            case Ir.Stmt.Expression expression -> use(expression.expression());
+            case Ir.Stmt.Assignment.Variable assignment -> {
+                use(assignment.variable().name());
+                use(assignment.value());
+            }
+            case Ir.Stmt.Assignment.Property assignment -> {
+                use(assignment.property());
+                use(assignment.value());
+            }
+        }
+    }
+
+    private void use(Ir.Expr expr) {
+        switch (expr) {
+            case Ir.Expr.Literal _ -> {}
+            case Ir.Expr.Group group -> use(group.expression());
+            case Ir.Expr.Binary binary -> {
+                use(binary.left());
+                use(binary.right());
+            }
+            case Ir.Expr.Variable variable -> use(variable.name());
+            case Ir.Expr.Property property -> use(property.receiver());
+            case Ir.Expr.Function function -> {
+                use(function.name());
+                function.arguments().forEach(this::use);
+            }
+            case Ir.Expr.Method method -> {
+                use(method.receiver());
+                method.arguments().forEach(this::use);
+            }
+            case Ir.Expr.ObjectExpr object -> {
+                object.fields().forEach(field -> field.value().ifPresent(this::use));
+                object.methods().forEach(method -> method.body().forEach(this::use));
+            }
+        }
+    }
+
+    private void use(String name) {
+        if (used.add(name)) {
+            pending.push(name);
+        }
+    }
+
+    /**
+     * Removes the dead code from the statements of a scope.
+     */
+    private List<Ir.Stmt> block(List<Ir.Stmt> statements) {
+        var result = new ArrayList<Ir.Stmt>();
+        for (int i = 0; i < statements.size(); i++) {
+            var statement = statement(statements.get(i));
+            if (statement == null) {
+                continue;
+            }
+            result.add(statement);
+            if (returns(statement)) {
+                unreachable += statements.size() - i - 1;
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the statement without its dead code, or null if it is dead.
+     */
+    private Ir.@Nullable Stmt statement(Ir.Stmt statement) {
+        return switch (statement) {
+            case Ir.Stmt.Let let when !used.contains(let.name()) -> {
+                removed++;
+                yield let.value().filter(value -> !pure(value)).map(Ir.Stmt.Expression::new).orElse(null);
+            }
+            case Ir.Stmt.Def def when !used.contains(def.name()) -> {
+                removed++;
+                yield null;
+            }
+            case Ir.Stmt.Def def -> new Ir.Stmt.Def(def.name(), def.parameters(), def.returns(), block(def.body()));
+            case Ir.Stmt.If ifStmt -> {
+                var thenBody = block(ifStmt.thenBody());
+                var elseBody = block(ifStmt.elseBody());
+                if (thenBody.isEmpty() && elseBody.isEmpty()) {
+                    branches++;
+                    yield effect(ifStmt.condition());
+                }
+                yield new Ir.Stmt.If(ifStmt.condition(), thenBody, elseBody);
+            }
+            case Ir.Stmt.For forStmt -> {
+                var body = block(forStmt.body());
+                if (body.isEmpty()) {
+                    branches++;
+                    yield effect(forStmt.expression());
+                }
+                yield new Ir.Stmt.For(forStmt.name(), forStmt.type(), forStmt.expression(), body);
+            }
+            case Ir.Stmt.Expression expression -> new Ir.Stmt.Expression(expr(expression.expression()));
+            case Ir.Stmt.Let let -> new Ir.Stmt.Let(let.name(), let.type(), let.value().map(this::expr));
+            case Ir.Stmt.Return returnStmt -> new Ir.Stmt.Return(returnStmt.value().map(this::expr));
+            case Ir.Stmt.Assignment.Variable assignment -> new Ir.Stmt.Assignment.Variable(assignment.variable(), expr(assignment.value()));
+            case Ir.Stmt.Assignment.Property assignment -> new Ir.Stmt.Assignment.Property(
+                (Ir.Expr.Property) expr(assignment.property()), expr(assignment.value()));
+        };
+    }
+
+    /**
+     * Returns a statement evaluating the expression if it is not pure, or
+     * null.
+     */
+    private Ir.@Nullable Stmt effect(Ir.Expr expr) {
+        return pure(expr) ? null : new Ir.Stmt.Expression(expr(expr));
+    }
+
+    /**
+     * Returns the expression with the dead code removed from the bodies of
+     * any objects' methods.
+     */
+    private Ir.Expr expr(Ir.Expr expr) {
+        return switch (expr) {
+            case Ir.Expr.Literal _, Ir.Expr.Variable _ -> expr;
+            case Ir.Expr.Group group -> new Ir.Expr.Group(expr(group.expression()));
+            case Ir.Expr.Binary binary -> new Ir.Expr.Binary(binary.operator(), expr(binary.left()), expr(binary.right()), binary.type());
+            case Ir.Expr.Property property -> new Ir.Expr.Property(expr(property.receiver()), property.name(), property.type());
+            case Ir.Expr.Function function -> new Ir.Expr.Function(function.name(), function.arguments().stream().map(this::expr).toList(), function.type());
+            case Ir.Expr.Method method -> new Ir.Expr.Method(expr(method.receiver()), method.name(),
+                method.arguments().stream().map(this::expr).toList(), method.type());
+            case Ir.Expr.ObjectExpr object -> new Ir.Expr.ObjectExpr(object.name(),
+                object.fields().stream().map(field -> new Ir.Stmt.Let(field.name(), field.type(), field.value().map(this::expr))).toList(),
+                object.methods().stream().map(method -> new Ir.Stmt.Def(method.name(), method.parameters(), method.returns(), block(method.body()))).toList(),
+                object.type());
+        };
+    }
+
+    /**
+     * Returns true if the statement always returns from the function.
+     */
+    private static boolean returns(Ir.Stmt statement) {
+        return switch (statement) {
+            case Ir.Stmt.Return _ -> true;
+            case Ir.Stmt.If ifStmt -> !ifStmt.thenBody().isEmpty() && returns(ifStmt.thenBody().getLast())
+                && !ifStmt.elseBody().isEmpty() && returns(ifStmt.elseBody().getLast());
+            default -> false;
+        };
+    }
+
+}
@@ -0,0 +1,28 @@
+package plc.project.optimizer;
+
+import plc.project.analyzer.Ir;
+
+import java.util.Map;
+
+/**
+ * A transformation of an analyzed source, run by a {@link PassManager}. A
+ * pass must preserve the behavior of the source, and may keep state between
+ * runs, so it is not thread safe.
+ */
+public interface Pass {
+
+    /**
+     * Returns the name the pass is reported by.
+     */
+    String name();
+
+    Ir.Source apply(Ir.Source source);
+
+    /**
+     * Returns what the last {@link #apply} changed, as the number of each
+     * kind of change (such as expressions folded), which is empty if it
+     * changed nothing.
+     */
+    Map<String, Integer> changes();
+
+}
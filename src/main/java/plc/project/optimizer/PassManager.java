@@ -0,0 +1,164 @@
+package plc.project.optimizer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import plc.project.analyzer.Ir;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Runs optimization passes over analyzed sources, between the
+ * {@link plc.project.analyzer.Analyzer} and execution. The passes run in
+ * order, as many times as the {@link Level} allows, and each application is
+ * reported with its wall time, the number of nodes before and after, and its
+ * {@link Pass#changes()}, so the time spent compiling can be weighed against
+ * what each pass saves. Reports are also logged at INFO, which can be enabled
+ * with {@code -Dplc.log.optimizer=info}.
+ *
+ * <p>Passes keep state between runs, so a manager is not thread safe.
+ */
+public final class PassManager {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    public enum Level {
+        /** Runs no passes. */
+        O0,
+        /** Runs each pass once. */
+        O1,
+        /**
+         * Runs the passes repeatedly until a round changes nothing (as one
+         * pass may enable another), for at most {@link #MAX_ROUNDS} rounds. A
+         * pass changes nothing if it reports no changes or returns a source
+         * equal to its input, so a pass miscounting its changes cannot keep
+         * the rounds going.
+         */
+        O2
+    }
+
+    public static final int MAX_ROUNDS = 8;
+
+    /**
+     * An application of a pass, in the given round (from 1).
+     */
+    public record Report(String pass, int round, long nanos, int before, int after, Map<String, Integer> changes) {
+
+        public boolean changed() {
+            return !changes.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            var changes = this.changes.entrySet().stream()
+                .map(entry -> entry.getKey() + "=" + entry.getValue())
+                .collect(Collectors.joining(", ", "[", "]"));
+            return String.format("%s (round %d): %.3fms, %d -> %d nodes, %s", pass, round, nanos / 1e6, before, after, changes);
+        }
+
+    }
+
+    public record Result(Ir.Source source, List<Report> reports) {
+
+        /**
+         * Returns the total wall time of the passes.
+         */
+        public long nanos() {
+            return reports.stream().mapToLong(Report::nanos).sum();
+        }
+
+    }
+
+    private final Level level;
+    private final List<Pass> passes;
+
+    public PassManager(Level level, List<Pass> passes) {
+        this.level = level;
+        this.passes = List.copyOf(passes);
+    }
+
+    /**
+     * Creates a manager running the standard passes at the given level, which
+     * treat the source as the whole program.
+     */
+    public PassManager(Level level) {
+        this(level, List.of(new ConstantFolder(), new DeadCodeEliminator()));
+    }
+
+    public Level level() {
+        return level;
+    }
+
+    public Result run(Ir.Source source) {
+        var rounds = switch (level) {
+            case O0 -> 0;
+            case O1 -> 1;
+            case O2 -> MAX_ROUNDS;
+        };
+        var reports = new ArrayList<Report>();
+        var size = rounds > 0 ? size(source) : 0;
+        for (int round = 1; round <= rounds; round++) {
+            var changed = false;
+            for (var pass : passes) {
+                var start = System.nanoTime();
+                var result = pass.apply(source);
+                var nanos = System.nanoTime() - start;
+                var after = size(result);
+                var report = new Report(pass.name(), round, nanos, size, after, pass.changes());
+                LOGGER.info("{}", report);
+                reports.add(report);
+                changed |= report.changed() && !result.equals(source);
+                source = result;
+                size = after;
+            }
+            if (!changed) {
+                break;
+            }
+        }
+        return new Result(source, reports);
+    }
+
+    /**
+     * Returns the number of statement and expression nodes in the tree.
+     */
+    public static int size(Ir ir) {
+        return switch (ir) {
+            case Ir.Source source -> size(source.statements());
+            case Ir.Stmt.Let let -> 1 + let.value().map(PassManager::size).orElse(0);
+            case Ir.Stmt.Def def -> 1 + size(def.body());
+            case Ir.Stmt.If stmt -> 1 + size(stmt.condition()) + size(stmt.thenBody()) + size(stmt.elseBody());
+            case Ir.Stmt.For stmt -> 1 + size(stmt.expression()) + size(stmt.body());
+            case Ir.Stmt.Return stmt -> 1 + stmt.value().map(PassManager::size).orElse(0);
+            case Ir.Stmt.Expression stmt -> 1 + size(stmt.expression());
+            case Ir.Stmt.Assignment.Variable stmt -> 1 + size(stmt.variable()) + size(stmt.value());
+            case Ir.Stmt.Assignment.Property stmt -> 1 + size(stmt.property()) + size(stmt.value());
+            case Ir.Expr.Literal _, Ir.Expr.Variable _ -> 1;
+            case Ir.Expr.Group expr -> 1 + size(expr.expression());
+            case Ir.Expr.Binary expr -> 1 + size(expr.left()) + size(expr.right());
+            case Ir.Expr.Property expr -> 1 + size(expr.receiver());
+            case Ir.Expr.Function expr -> 1 + size(expr.arguments());
+            case Ir.Expr.Method expr -> 1 + size(expr.receiver()) + size(expr.arguments());
+            case Ir.Expr.ObjectExpr expr -> 1 + size(expr.fields()) + size(expr.methods());
+        };
+    }
+
+    private static int size(List<? extends Ir> irs) {
+        var size = 0;
+        for (var ir : irs) {
+            size += size(ir);
+        }
+        return size;
+    }
+
+    /**
+     * Adds a count to a pass's changes, if it is not zero.
+     */
+    static void count(Map<String, Integer> changes, String kind, int count) {
+        if (count != 0) {
+            changes.put(kind, count);
+        }
+    }
+
+}
@@ -0,0 +1,328 @@
+package plc.project.parser;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Optional;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A compact, read-only encoding of an {@link Ast} in a few flat arrays rather
+ * than one object per node, for programs which stay resident.
+ *
+ * <p>Nodes are identified by an {@code int} id and numbered in post-order, so
+ * children always come before their parent, every subtree occupies a
+ * contiguous range of ids ending at its root, and the root of the whole tree
+ * is the last node. Each node has a {@link Kind} and a fixed number of int
+ * fields, given in order by each kind. A field is either:
+ *
+ * <ul>
+ *     <li>a node, the id of a child node;</li>
+ *     <li>a constant, an index into the constant pool holding names,
+ *     operators and literal values, each stored once;</li>
+ *     <li>a list, a reference to a list of node ids or of constants, read
+ *     through {@link #length(int)} and {@link #element(int, int)}.</li>
+ * </ul>
+ *
+ * <p>{@link #NONE} stands for an absent node or constant: an empty
+ * {@link Optional}, or {@code null} where the original tree had one.
+ */
+public final class AstArena {
+
+    public static final int NONE = -1;
+
+    /**
+     * The kind of a node, one per {@link Ast} record, and its fields.
+     */
+    public enum Kind {
+        /** statements (node list) */
+        SOURCE(1),
+        /** name (constant), type (constant), value (node) */
+        LET(3),
+        /** name (constant), parameters (constant list), parameter types (constant list), return type (constant), body (node list) */
+        DEF(5),
+        /** condition (node), then body (node list), else body (node list) */
+        IF(3),
+        /** name (constant), expression (node), body (node list) */
+        FOR(3),
+        /** value (node) */
+        RETURN(1),
+        /** expression (node) */
+        EXPRESSION(1),
+        /** expression (node), value (node) */
+        ASSIGNMENT(2),
+        /** value (constant) */
+        LITERAL(1),
+        /** expression (node) */
+        GROUP(1),
+        /** operator (constant), left (node), right (node) */
+        BINARY(3),
+        /** name (constant) */
+        VARIABLE(1),
+        /** receiver (node), name (constant) */
+        PROPERTY(2),
+        /** name (constant), arguments (node list) */
+        FUNCTION(2),
+        /** receiver (node), name (constant), arguments (node list) */
+        METHOD(3),
+        /** name (constant), fields (node list), methods (node list) */
+        OBJECT(3);
+
+        private static final Kind[] VALUES = values();
+
+        private final int arity;
+
+        Kind(int arity) {
+            this.arity = arity;
+        }
+
+        public int arity() {
+            return arity;
+        }
+
+    }
+
+    private final byte[] kinds;
+    private final int[] starts;
+    private final int[] fields;
+    private final int[] lists;
+    private final Object[] constants;
+
+    private AstArena(Builder builder) {
+        kinds = Arrays.copyOf(builder.kinds, builder.size);
+        starts = Arrays.copyOf(builder.starts, builder.size);
+        fields = Arrays.copyOf(builder.fields, builder.fieldsSize);
+        lists = Arrays.copyOf(builder.lists, builder.listsSize);
+        constants = builder.constants.toArray();
+    }
+
+    public static AstArena of(Ast.Source source) {
+        var builder = new Builder();
+        builder.node(source);
+        return new AstArena(builder);
+    }
+
+    /**
+     * Returns the number of nodes, which are numbered from 0.
+     */
+    public int size() {
+        return kinds.length;
+    }
+
+    /**
+     * Returns the id of the {@link Kind#SOURCE} node at the root.
+     */
+    public int root() {
+        return kinds.length - 1;
+    }
+
+    public Kind kind(int node) {
+        return Kind.VALUES[kinds[node]];
+    }
+
+    /**
+     * Returns the given field of the node, as ordered by its kind.
+     */
+    public int field(int node, int field) {
+        checkArgument(field >= 0 && field < kind(node).arity, "Field %s out of range for %s.", field, kind(node));
+        return fields[starts[node] + field];
+    }
+
+    /**
+     * Returns the length of a list field.
+     */
+    public int length(int list) {
+        return lists[list];
+    }
+
+    /**
+     * Returns an element of a list field, a node id or constant depending on
+     * the list.
+     */
+    public int element(int list, int index) {
+        checkArgument(index >= 0 && index < lists[list], "Index %s out of range for list of length %s.", index, lists[list]);
+        return lists[list + 1 + index];
+    }
+
+    /**
+     * Returns the value of a constant, or {@code null} for {@link #NONE}.
+     */
+    public @Nullable Object constant(int constant) {
+        return constant == NONE ? null : constants[constant];
+    }
+
+    /**
+     * Returns the constant in the given field of the node as a string, such
+     * as a name or operator.
+     */
+    public @Nullable String string(int node, int field) {
+        return (String) constant(field(node, field));
+    }
+
+    public Ast.Source toSource() {
+        return (Ast.Source) toAst(root());
+    }
+
+    /**
+     * Converts the subtree rooted at the given node back into records.
+     */
+    public Ast toAst(int node) {
+        return switch (kind(node)) {
+            case SOURCE -> new Ast.Source(nodes(field(node, 0), Ast.Stmt.class));
+            case LET -> new Ast.Stmt.Let(string(node, 0), optional(field(node, 1), String.class), optional(expr(field(node, 2))));
+            case DEF -> new Ast.Stmt.Def(string(node, 0), strings(field(node, 1)), optionals(field(node, 2)),
+                optional(field(node, 3), String.class), nodes(field(node, 4), Ast.Stmt.class));
+            case IF -> new Ast.Stmt.If(expr(field(node, 0)), nodes(field(node, 1), Ast.Stmt.class), nodes(field(node, 2), Ast.Stmt.class));
+            case FOR -> new Ast.Stmt.For(string(node, 0), expr(field(node, 1)), nodes(field(node, 2), Ast.Stmt.class));
+            case RETURN -> new Ast.Stmt.Return(optional(expr(field(node, 0))));
+            case EXPRESSION -> new Ast.Stmt.Expression(expr(field(node, 0)));
+            case ASSIGNMENT -> new Ast.Stmt.Assignment(expr(field(node, 0)), expr(field(node, 1)));
+            case LITERAL -> new Ast.Expr.Literal(constant(field(node, 0)));
+            case GROUP -> new Ast.Expr.Group(expr(field(node, 0)));
+            case BINARY -> new Ast.Expr.Binary(string(node, 0), expr(field(node, 1)), expr(field(node, 2)));
+            case VARIABLE -> new Ast.Expr.Variable(string(node, 0));
+            case PROPERTY -> new Ast.Expr.Property(expr(field(node, 0)), string(node, 1));
+            case FUNCTION -> new Ast.Expr.Function(string(node, 0), nodes(field(node, 1), Ast.Expr.class));
+            case METHOD -> new Ast.Expr.Method(expr(field(node, 0)), string(node, 1), nodes(field(node, 2), Ast.Expr.class));
+            case OBJECT -> new Ast.Expr.ObjectExpr(optional(field(node, 0), String.class),
+                nodes(field(node, 1), Ast.Stmt.Let.class), nodes(field(node, 2), Ast.Stmt.Def.class));
+        };
+    }
+
+    private Ast.@Nullable Expr expr(int node) {
+        return node == NONE ? null : (Ast.Expr) toAst(node);
+    }
+
+    private <T> Optional<T> optional(@Nullable T value) {
+        return Optional.ofNullable(value);
+    }
+
+    private <T> Optional<T> optional(int constant, Class<T> type) {
+        return Optional.ofNullable(type.cast(constant(constant)));
+    }
+
+    private <T extends Ast> List<T> nodes(int list, Class<T> type) {
+        var nodes = new ArrayList<T>(length(list));
+        for (int i = 0; i < length(list); i++) {
+            var element = element(list, i);
+            nodes.add(element == NONE ? null : type.cast(toAst(element)));
+        }
+        return nodes;
+    }
+
+    private List<String> strings(int list) {
+        var strings = new ArrayList<String>(length(list));
+        for (int i = 0; i < length(list); i++) {
+            strings.add((String) constant(element(list, i)));
+        }
+        return strings;
+    }
+
+    private List<Optional<String>> optionals(int list) {
+        var optionals = new ArrayList<Optional<String>>(length(list));
+        for (int i = 0; i < length(list); i++) {
+            optionals.add(optional(element(list, i), String.class));
+        }
+        return optionals;
+    }
+
+    /**
+     * Appends nodes in post-order, growing each array as needed. Constants
+     * are deduplicated by equality, so a name used throughout a program is
+     * stored once.
+     */
+    private static final class Builder {
+
+        private byte[] kinds = new byte[64];
+        private int[] starts = new int[64];
+        private int size = 0;
+        private int[] fields = new int[128];
+        private int fieldsSize = 0;
+        private int[] lists = new int[64];
+        private int listsSize = 0;
+        private final List<Object> constants = new ArrayList<>();
+        private final HashMap<Object, Integer> indices = new HashMap<>();
+
+        private int node(@Nullable Ast ast) {
+            return switch (ast) {
+                case null -> NONE;
+                case Ast.Source source -> add(Kind.SOURCE, nodes(source.statements()));
+                case Ast.Stmt.Let stmt -> add(Kind.LET, constant(stmt.name()), constant(stmt.type().orElse(null)), node(stmt.value().orElse(null)));
+                case Ast.Stmt.Def stmt -> add(Kind.DEF, constant(stmt.name()), constants(stmt.parameters()),
+                    constants(stmt.parameterTypes().stream().map(type -> type.orElse(null)).toList()),
+                    constant(stmt.returnType().orElse(null)), nodes(stmt.body()));
+                case Ast.Stmt.If stmt -> add(Kind.IF, node(stmt.condition()), nodes(stmt.thenBody()), nodes(stmt.elseBody()));
+                case Ast.Stmt.For stmt -> add(Kind.FOR, constant(stmt.name()), node(stmt.expression()), nodes(stmt.body()));
+                case Ast.Stmt.Return stmt -> add(Kind.RETURN, node(stmt.value().orElse(null)));
+                case Ast.Stmt.Expression stmt -> add(Kind.EXPRESSION, node(stmt.expression()));
+                case Ast.Stmt.Assignment stmt -> add(Kind.ASSIGNMENT, node(stmt.expression()), node(stmt.value()));
+                case Ast.Expr.Literal expr -> add(Kind.LITERAL, constant(expr.value()));
+                case Ast.Expr.Group expr -> add(Kind.GROUP, node(expr.expression()));
+                case Ast.Expr.Binary expr -> add(Kind.BINARY, constant(expr.operator()), node(expr.left()), node(expr.right()));
+                case Ast.Expr.Variable expr -> add(Kind.VARIABLE, constant(expr.name()));
+                case Ast.Expr.Property expr -> add(Kind.PROPERTY, node(expr.receiver()), constant(expr.name()));
+                case Ast.Expr.Function expr -> add(Kind.FUNCTION, constant(expr.name()), nodes(expr.arguments()));
+                case Ast.Expr.Method expr -> add(Kind.METHOD, node(expr.receiver()), constant(expr.name()), nodes(expr.arguments()));
+                case Ast.Expr.ObjectExpr expr -> add(Kind.OBJECT, constant(expr.name().orElse(null)), nodes(expr.fields()), nodes(expr.methods()));
+            };
+        }
+
+        private int add(Kind kind, int... values) {
+            if (size == kinds.length) {
+                kinds = Arrays.copyOf(kinds, size * 2);
+                starts = Arrays.copyOf(starts, size * 2);
+            }
+            if (fieldsSize + values.length > fields.length) {
+                fields = Arrays.copyOf(fields, Math.max(fields.length * 2, fieldsSize + values.length));
+            }
+            kinds[size] = (byte) kind.ordinal();
+            starts[size] = fieldsSize;
+            System.arraycopy(values, 0, fields, fieldsSize, values.length);
+            fieldsSize += values.length;
+            return size++;
+        }
+
+        private int nodes(List<? extends @Nullable Ast> nodes) {
+            var elements = new int[nodes.size()];
+            for (int i = 0; i < elements.length; i++) {
+                elements[i] = node(nodes.get(i));
+            }
+            return list(elements);
+        }
+
+        private int constants(List<? extends @Nullable Object> values) {
+            var elements = new int[values.size()];
+            for (int i = 0; i < elements.length; i++) {
+                elements[i] = constant(values.get(i));
+            }
+            return list(elements);
+        }
+
+        private int list(int[] elements) {
+            if (listsSize + elements.length + 1 > lists.length) {
+                lists = Arrays.copyOf(lists, Math.max(lists.length * 2, listsSize + elements.length + 1));
+            }
+            var list = listsSize;
+            lists[listsSize++] = elements.length;
+            System.arraycopy(elements, 0, lists, listsSize, elements.length);
+            listsSize += elements.length;
+            return list;
+        }
+
+        private int constant(@Nullable Object value) {
+            if (value == null) {
+                return NONE;
+            }
+            return indices.computeIfAbsent(value, v -> {
+                constants.add(v);
+                return constants.size() - 1;
+            });
+        }
+
+    }
+
+}
@@ -0,0 +1,145 @@
+package plc.project.parser;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Hash-conses expressions, so that structurally equal expressions are
+ * represented by a single shared instance. Generated sources often repeat the
+ * same subexpressions (property chains, arithmetic on the same variables),
+ * which are then stored once, and later passes can memoize per unique
+ * subtree by identity.
+ *
+ * <p>Expressions are interned bottom-up, after their children, so that a
+ * node is looked up by its own fields and the identity of its children
+ * rather than by comparing whole subtrees. Each interned node's structural
+ * {@link #hash} is computed once from its children's and cached. Object
+ * expressions contain statements and are never shared themselves, though the
+ * expressions within them are. The parser leaves missing operands null (as in
+ * {@code - x}), which hash as {@code 0} and are only equal to null.
+ *
+ * <p>Interners are not thread safe. Since a shared node stands for every
+ * occurrence of its expression, {@link Parser#offset} gives the offset of
+ * its first occurrence.
+ */
+public final class AstInterner {
+
+    private final Map<Key, Ast.Expr> nodes = new HashMap<>();
+    private final Map<Ast.Expr, Integer> hashes = new IdentityHashMap<>();
+
+    /**
+     * Returns the shared instance of the expression, which is the expression
+     * itself the first time one like it is interned.
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends Ast.Expr> T intern(T expr) {
+        if (expr instanceof Ast.Expr.ObjectExpr || hashes.containsKey(expr)) {
+            return expr;
+        }
+        var key = new Key(expr, compute(expr));
+        var existing = nodes.putIfAbsent(key, expr);
+        if (existing != null) {
+            return (T) existing;
+        }
+        hashes.put(expr, key.hash());
+        return expr;
+    }
+
+    /**
+     * Returns the structural hash of the expression: equal expressions have
+     * equal hashes. This is cached for interned expressions, and otherwise
+     * computed over the whole subtree.
+     */
+    public int hash(Ast.Expr expr) {
+        var hash = hashes.get(expr);
+        return hash != null ? hash : compute(expr);
+    }
+
+    /**
+     * Returns the number of distinct expressions interned.
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    private int compute(Ast.Expr expr) {
+        return switch (expr) {
+            case Ast.Expr.Literal literal -> 1 + 31 * Objects.hashCode(literal.value());
+            case Ast.Expr.Group group -> 2 + 31 * child(group.expression());
+            case Ast.Expr.Binary binary -> 3 + 31 * (binary.operator().hashCode() + 31 * (child(binary.left()) + 31 * child(binary.right())));
+            case Ast.Expr.Variable variable -> 4 + 31 * variable.name().hashCode();
+            case Ast.Expr.Property property -> 5 + 31 * (child(property.receiver()) + 31 * property.name().hashCode());
+            case Ast.Expr.Function function -> 6 + 31 * (function.name().hashCode() + 31 * hash(function.arguments()));
+            case Ast.Expr.Method method -> 7 + 31 * (child(method.receiver()) + 31 * (method.name().hashCode() + 31 * hash(method.arguments())));
+            case Ast.Expr.ObjectExpr object -> 8 + 31 * object.hashCode();
+        };
+    }
+
+    private int hash(List<Ast.Expr> exprs) {
+        var hash = 1;
+        for (var expr : exprs) {
+            hash = 31 * hash + child(expr);
+        }
+        return hash;
+    }
+
+    private int child(Ast.@Nullable Expr expr) {
+        return expr != null ? hash(expr) : 0;
+    }
+
+    /**
+     * An expression compared by its fields and the identity of its children,
+     * which are already interned.
+     */
+    private record Key(Ast.Expr expr, int hash) {
+
+        @Override
+        public boolean equals(Object object) {
+            return object instanceof Key key && key.hash == hash && shallowEquals(expr, key.expr);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        private static boolean shallowEquals(Ast.Expr first, Ast.Expr second) {
+            return switch (first) {
+                case Ast.Expr.Literal a when second instanceof Ast.Expr.Literal b ->
+                    Objects.equals(a.value(), b.value());
+                case Ast.Expr.Group a when second instanceof Ast.Expr.Group b ->
+                    a.expression() == b.expression();
+                case Ast.Expr.Binary a when second instanceof Ast.Expr.Binary b ->
+                    a.operator().equals(b.operator()) && a.left() == b.left() && a.right() == b.right();
+                case Ast.Expr.Variable a when second instanceof Ast.Expr.Variable b ->
+                    a.name().equals(b.name());
+                case Ast.Expr.Property a when second instanceof Ast.Expr.Property b ->
+                    a.receiver() == b.receiver() && a.name().equals(b.name());
+                case Ast.Expr.Function a when second instanceof Ast.Expr.Function b ->
+                    a.name().equals(b.name()) && same(a.arguments(), b.arguments());
+                case Ast.Expr.Method a when second instanceof Ast.Expr.Method b ->
+                    a.receiver() == b.receiver() && a.name().equals(b.name()) && same(a.arguments(), b.arguments());
+                default -> false;
+            };
+        }
+
+        private static boolean same(List<Ast.Expr> first, List<Ast.Expr> second) {
+            if (first.size() != second.size()) {
+                return false;
+            }
+            for (int i = 0; i < first.size(); i++) {
+                if (first.get(i) != second.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+
+}
@@ -0,0 +1,64 @@
+package plc.project.parser;
+
+import plc.project.lexer.Token;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Deduplicates the values of literals and the names of identifiers (and
+ * operators) within a compilation, so that every occurrence of the same
+ * literal or name in the AST shares one instance. A literal's value is
+ * converted from its token once, rather than at each occurrence, and sources
+ * which repeat a few distinct literals many times retain only those.
+ *
+ * <p>Values are keyed by the type and literal of their token. The type is
+ * needed since the lexer may give the same literal different types (such as
+ * {@code 2.5}, which is an integer before a period), and an integer literal
+ * which cannot be converted must fail at every occurrence. Pools are not
+ * thread safe, and each {@link Parser} uses its own.
+ */
+public final class ConstantPool {
+
+    private final Map<Token.Type, Map<String, Object>> values = new EnumMap<>(Token.Type.class);
+    private final Map<String, String> names = new HashMap<>();
+
+    /**
+     * Returns the value of the literal token with the given type, which must
+     * be an INTEGER, DECIMAL, CHARACTER or STRING literal.
+     */
+    public Object value(Token.Type type, String literal) {
+        var pool = values.computeIfAbsent(type, _ -> new HashMap<>());
+        var value = pool.get(literal);
+        if (value == null) {
+            value = switch (type) {
+                case INTEGER -> new BigInteger(literal);
+                case DECIMAL -> new BigDecimal(literal);
+                case CHARACTER -> literal.charAt(1);
+                case STRING -> literal.substring(1, literal.length() - 1).replace("\\n", "\n");
+                default -> throw new IllegalArgumentException("Not a literal type: " + type + ".");
+            };
+            pool.put(literal, value);
+        }
+        return value;
+    }
+
+    /**
+     * Returns the shared instance of the given name.
+     */
+    public String name(String name) {
+        var existing = names.putIfAbsent(name, name);
+        return existing != null ? existing : name;
+    }
+
+    /**
+     * Returns the number of distinct values and names in the pool.
+     */
+    public int size() {
+        return values.values().stream().mapToInt(Map::size).sum() + names.size();
+    }
+
+}
@@ -0,0 +1,156 @@
+package plc.project.parser;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import plc.project.lexer.LexException;
+import plc.project.lexer.Lexer;
+import plc.project.lexer.TokenBuffer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+
+/**
+ * Keeps the tokens and AST of a source up to date as it is edited, for
+ * tooling and the REPL. An edit re-lexes only the tokens around it (see
+ * {@link TokenBuffer#relex}) and re-parses only the top-level statements that
+ * covered or looked at those tokens. Every other statement is reused as the
+ * same {@link Ast.Stmt} instance, so the work done is proportional to the size
+ * of the edit rather than the source.
+ *
+ * <p>Statements are never modified once parsed, so each edit builds new lists
+ * sharing the unchanged statements and returned ASTs remain valid.
+ *
+ * <p>The result is always equal to parsing the whole edited source. If an
+ * edit leaves the source invalid, the exception is thrown but the edit is
+ * still applied, and the next edit parses the whole source again.
+ */
+public final class IncrementalParser {
+
+    /**
+     * The number of tokens past the end of a statement the parser may have
+     * looked at while parsing it (such as a missing DO after DEF).
+     */
+    private static final int LOOKAHEAD = 2;
+
+    private String input;
+    private @Nullable TokenBuffer tokens;
+    private List<Ast.Stmt> statements = new ArrayList<>();
+    private int[] ends = new int[0];  //token index after each statement
+
+    public IncrementalParser(String input) throws LexException, ParseException {
+        this.input = input;
+        parse();
+    }
+
+    public String input() {
+        return input;
+    }
+
+    public Ast.Source source() {
+        return new Ast.Source(Collections.unmodifiableList(statements));
+    }
+
+    /**
+     * Replaces {@code removed} characters at {@code offset} with the inserted
+     * text, returning the AST of the edited source.
+     */
+    public Ast.Source edit(int offset, int removed, String inserted) throws LexException, ParseException {
+        checkPositionIndexes(offset, offset + removed, input.length());
+        input = new StringBuilder(input.length() - removed + inserted.length())
+            .append(input, 0, offset)
+            .append(inserted)
+            .append(input, offset + removed, input.length())
+            .toString();
+        try {
+            if (tokens == null) {
+                parse();
+            } else {
+                reparse(tokens.relex(input, offset, removed, inserted.length()));
+            }
+        } catch (LexException | ParseException exception) {
+            tokens = null;
+            throw exception;
+        }
+        return source();
+    }
+
+    private void parse() throws LexException, ParseException {
+        tokens = null;
+        var buffer = TokenBuffer.lex(new Lexer(input));
+        var parser = new Parser(buffer);
+        var statements = new ArrayList<Ast.Stmt>();
+        var ends = new int[8];
+        while (parser.index() < buffer.size()) {
+            statements.add(parser.parseStmt());
+            ends = add(ends, statements.size() - 1, parser.index());
+        }
+        this.statements = statements;
+        this.ends = Arrays.copyOf(ends, statements.size());
+        this.tokens = buffer;
+    }
+
+    /**
+     * Re-parses from the first statement which may have seen a changed token,
+     * until a statement ends where one previously started after the changed
+     * tokens. The parser only reads forward, so from there on it would parse
+     * the same statements as before.
+     */
+    private void reparse(TokenBuffer.Edit edit) throws ParseException {
+        var buffer = edit.tokens();
+        var changed = edit.start() + edit.inserted();
+        var shift = edit.inserted() - edit.removed();
+        var first = 0;  //number of leading statements kept, found by binary search
+        for (int low = 0, high = ends.length; low < high; ) {
+            var middle = (low + high) >>> 1;
+            if (ends[middle] + LOOKAHEAD <= edit.start()) {
+                first = middle + 1;
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        var parser = new Parser(buffer);
+        parser.seek(first == 0 ? 0 : ends[first - 1]);
+        var statements = new ArrayList<>(this.statements.subList(0, first));
+        var ends = Arrays.copyOf(this.ends, Math.max(first, 8));
+        var old = first;  //next old statement which may be reused
+        while (parser.index() < buffer.size()) {
+            var index = parser.index();
+            if (index >= changed) {
+                while (old < this.ends.length && start(old) < index - shift) {
+                    old++;
+                }
+                if (old < this.ends.length && start(old) == index - shift) {
+                    var count = this.ends.length - old;
+                    ends = Arrays.copyOf(ends, statements.size() + count);
+                    for (int i = 0; i < count; i++) {
+                        ends[statements.size() + i] = this.ends[old + i] + shift;
+                    }
+                    statements.addAll(this.statements.subList(old, this.ends.length));
+                    break;
+                }
+            }
+            statements.add(parser.parseStmt());
+            ends = add(ends, statements.size() - 1, parser.index());
+        }
+        this.statements = statements;
+        this.ends = Arrays.copyOf(ends, statements.size());
+        this.tokens = buffer;
+    }
+
+    private int start(int statement) {
+        return statement == 0 ? 0 : ends[statement - 1];
+    }
+
+    private static int[] add(int[] array, int index, int value) {
+        if (index == array.length) {
+            array = Arrays.copyOf(array, Math.max(8, array.length * 2));
+        }
+        array[index] = value;
+        return array;
+    }
+
+}
@@ -2,8 +2,23 @@ package plc.project.parser;
 
 public final class ParseException extends Exception {
 
+    private final int offset;
+
     public ParseException(String message) {
+        this(message, -1);
+    }
+
+    public ParseException(String message, int offset) {
         super(message);
+        this.offset = offset;
+    }
+
+    /**
+     * Returns the offset of the token where the error was found, as given by
+     * the token source (the input offset, for a lexer), or -1 if unknown.
+     */
+    public int offset() {
+        return offset;
     }
 
 }
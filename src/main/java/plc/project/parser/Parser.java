@@ -1,38 +1,183 @@
 package plc.project.parser;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.checkerframework.checker.units.qual.A;
+import plc.project.lexer.LexException;
+import org.checkerframework.checker.nullness.qual.Nullable;
 import plc.project.lexer.Token;
+import plc.project.lexer.TokenBuffer;
+import plc.project.lexer.TokenSource;
 
-import java.math.BigDecimal;
-import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 
 /**
  * This style of parser is called <em>recursive descent</em>. Each rule in our
  * grammar has dedicated function, and references to other rules correspond to
  * calling that function. Recursive rules are therefore supported by actual
- * recursive calls, while operator precedence is encoded via the grammar.
+ * recursive calls. Binary operators are the exception: rather than a rule per
+ * precedence level, they are parsed by precedence climbing over the
+ * {@link #OPERATORS} table (see {@link #parseBinaryExpr}).
  *
  * <p>The parser has a similar architecture to the lexer, just with
  * {@link Token}s instead of characters. As before, {@link TokenStream#peek} and
  * {@link TokenStream#match} help with traversing the token stream. Instead of
  * emitting tokens, you will instead need to extract the literal value via
- * {@link TokenStream#get} to be added to the relevant AST.
+ * {@link TokenStream#literal} to be added to the relevant AST.
+ *
+ * <p>Keywords and operators are matched by their {@link Token.Kind}, which the
+ * lexer assigns once per token, so choosing between alternatives is an enum
+ * comparison or switch rather than a series of string comparisons.
+ *
+ * <p>Tokens are pulled from a {@link TokenSource} only as the parser reaches
+ * them, so when parsing directly from a streaming {@link plc.project.lexer.Lexer}
+ * no more than a small window of tokens is held at once. Lexing errors found
+ * along the way are reported as {@link ParseException}s. An already lexed
+ * {@link TokenBuffer} is instead read in place.
+ *
+ * <p>A large {@link TokenBuffer} can be parsed in parallel with
+ * {@link #parseSourceParallel}, which splits it into runs of top-level
+ * statements parsed independently.
+ *
+ * <p>Positions are kept as offsets only: each error records the start offset
+ * of the token it was found at, as given by the token source, and
+ * {@link plc.project.lexer.LineIndex} turns an offset into a line and column
+ * once a diagnostic is actually reported. The offsets of statement and
+ * expression nodes are only recorded by a parser which is {@link #locating},
+ * so that parses which do not report errors against the tree pay nothing.
  */
 public final class Parser {
 
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    enum Associativity { LEFT, RIGHT }
+
+    record Operator(int precedence, Associativity associativity) {}
+
+    /**
+     * The binary operators, from loosest to tightest binding: logical,
+     * comparison, additive and multiplicative.
+     */
+    static final Map<Token.Kind, Operator> OPERATORS = new EnumMap<>(Token.Kind.class);
+    static final int LOWEST = 1;
+
+    private static final int MIN_SEGMENT = 1 << 12; //tokens
+
+    static {
+        for (var kind : List.of(Token.Kind.AND, Token.Kind.OR)) {
+            OPERATORS.put(kind, new Operator(1, Associativity.LEFT));
+        }
+        for (var kind : List.of(Token.Kind.LESS, Token.Kind.LESS_EQUALS, Token.Kind.GREATER,
+                Token.Kind.GREATER_EQUALS, Token.Kind.EQUALS_EQUALS, Token.Kind.NOT_EQUALS)) {
+            OPERATORS.put(kind, new Operator(2, Associativity.LEFT));
+        }
+        for (var kind : List.of(Token.Kind.PLUS, Token.Kind.MINUS)) {
+            OPERATORS.put(kind, new Operator(3, Associativity.LEFT));
+        }
+        for (var kind : List.of(Token.Kind.ASTERISK, Token.Kind.SLASH)) {
+            OPERATORS.put(kind, new Operator(4, Associativity.LEFT));
+        }
+    }
+
     private final TokenStream tokens;
+    private @Nullable Map<Ast, Integer> offsets; //nodes are records, compare by identity
+    private final ConstantPool constants = new ConstantPool();
+    private List<Parser> segments = List.of(); //parsers of the last parallel parse, for their offsets
+    private @Nullable AstInterner interner;
 
     //list of tokens passed in ex: ([token1: ident, literal: LET], [token2:......])
     public Parser(List<Token> tokens) {
+        this(TokenSource.of(tokens));
+    }
+
+    public Parser(TokenSource tokens) {
+        this.tokens = new TokenStream(tokens);
+    }
+
+    public Parser(TokenBuffer tokens) {
         this.tokens = new TokenStream(tokens);
     }
 
+    /**
+     * Returns the index of the next token to be parsed.
+     */
+    int index() {
+        return tokens.index;
+    }
+
+    /**
+     * Moves to the token at the given index, which is only possible when
+     * parsing a {@link TokenBuffer}.
+     */
+    void seek(int index) {
+        checkState(tokens.buffer != null && index >= 0 && index <= tokens.size);
+        tokens.index = index;
+    }
+
+    /**
+     * Returns the pool shared by the literals and names of every node this
+     * parser has created.
+     */
+    public ConstantPool constants() {
+        return constants;
+    }
+
+    /**
+     * Shares the expressions this parser creates from now on through the
+     * interner, so that structurally equal expressions are the same instance.
+     * A shared expression's offset is that of its first occurrence. Segments
+     * of {@link #parseSourceParallel} are not interned, since interners are
+     * not thread safe.
+     */
+    public Parser interning(AstInterner interner) {
+        this.interner = interner;
+        return this;
+    }
+
+    /**
+     * Records the offsets of the statement and expression nodes this parser
+     * creates from now on, for {@link #offset}. Segments of
+     * {@link #parseSourceParallel} record them as well.
+     */
+    public Parser locating() {
+        if (offsets == null) {
+            offsets = new IdentityHashMap<>();
+        }
+        return this;
+    }
+
+    /**
+     * Returns the start offset of a statement or expression node created by
+     * this parser, or -1 if it is unknown (including if it was created before
+     * the parser was {@link #locating}).
+     */
+    public int offset(Ast ast) {
+        if (offsets == null) {
+            return -1;
+        }
+        var offset = offsets.get(ast);
+        if (offset != null) {
+            return offset;
+        }
+        for (var segment : segments) {
+            var found = segment.offset(ast);
+            if (found >= 0) {
+                return found;
+            }
+        }
+        return -1;
+    }
+
     public Ast.Source parseSource() throws ParseException {
         var statement_list = new ArrayList<Ast.Stmt>();
         while (tokens.has(0)) {
@@ -41,73 +186,260 @@ public final class Parser {
         return new Ast.Source(statement_list);
     }
 
-    public Ast.Stmt parseStmt() throws ParseException {
-        if (tokens.match("LET")) {
-            return parseLetStmt();
+    /**
+     * Parses the rest of the buffer in parallel on the given pool, producing
+     * exactly the statements (and any exception) of {@link #parseSource()}.
+     */
+    public Ast.Source parseSourceParallel(ForkJoinPool pool) throws ParseException {
+        checkState(tokens.buffer != null, "Parallel parsing requires a TokenBuffer.");
+        var segment = Math.max(MIN_SEGMENT, (tokens.size - tokens.index) / (pool.getParallelism() * 4));
+        return parseSourceParallel(pool, segment);
+    }
+
+    /**
+     * Parses the rest of the buffer in segments of roughly the given number of
+     * tokens. Segments start at the likely beginnings of top-level statements
+     * found by {@link #boundaries}, which tracks nesting but does not parse.
+     *
+     * <p>Segments are joined in order. A segment's statements are only used
+     * if the previous segment ended exactly where it starts, so that it was
+     * parsed from a real statement boundary; otherwise the statements up to
+     * the next segment are parsed sequentially, continuing from the previous
+     * one. Each segment has its own {@link ConstantPool}.
+     */
+    public Ast.Source parseSourceParallel(ForkJoinPool pool, int segment) throws ParseException {
+        checkState(tokens.buffer != null, "Parallel parsing requires a TokenBuffer.");
+        checkArgument(segment > 0);
+        var buffer = tokens.buffer;
+        var bounds = boundaries(buffer, tokens.index, segment);
+        LOGGER.debug("Parsing {} segments", bounds.size() - 1);
+        var tasks = new ArrayList<ForkJoinTask<Segment>>();
+        for (int i = 0; i + 1 < bounds.size(); i++) {
+            var start = bounds.get(i);
+            var end = bounds.get(i + 1);
+            var parser = offsets != null ? new Parser(buffer).locating() : new Parser(buffer);
+            tasks.add(pool.submit(() -> Segment.parse(parser, start, end)));
         }
-        else if (tokens.match("DEF")) {
-            return parseDefStmt();
+        try {
+            var statements = new ArrayList<Ast.Stmt>();
+            var segments = new ArrayList<Parser>();
+            for (int i = 0; i < tasks.size(); i++) {
+                if (tokens.index == bounds.get(i)) {
+                    var result = tasks.get(i).join();
+                    if (result.exception() != null) {
+                        throw result.exception();
+                    }
+                    statements.addAll(result.statements());
+                    segments.add(result.parser());
+                    tokens.index = result.parser().index();
+                } else {
+                    //the segment does not start at a statement, so continue from the previous one instead
+                    tasks.get(i).cancel(false);
+                    while (tokens.index < bounds.get(i + 1)) {
+                        statements.add(parseStmt());
+                    }
+                }
+            }
+            this.segments = segments;
+            return new Ast.Source(statements);
+        } finally {
+            for (var task : tasks) {
+                task.cancel(false);
+            }
         }
-        else if (tokens.match("IF")) {
-            return parseIfStmt();
+    }
+
+    private record Segment(Parser parser, List<Ast.Stmt> statements, @Nullable ParseException exception) {
+
+        private static Segment parse(Parser parser, int start, int end) {
+            parser.seek(start);
+            var statements = new ArrayList<Ast.Stmt>();
+            try {
+                while (parser.index() < end) {
+                    statements.add(parser.parseStmt());
+                }
+                return new Segment(parser, statements, null);
+            } catch (ParseException exception) {
+                return new Segment(parser, statements, exception);
+            }
         }
-        else if (tokens.match("FOR")) {
-            return parseForStmt();
+
+    }
+
+    /**
+     * Returns token indices from the start to the end of the buffer, roughly
+     * the given number of tokens apart, at which a top-level statement seems
+     * to begin: after a {@code ;} outside of any parentheses or block, or
+     * after the {@code END} of a block followed by a statement keyword. In a
+     * valid source these always begin a statement.
+     */
+    private static List<Integer> boundaries(TokenBuffer buffer, int start, int segment) {
+        var bounds = new ArrayList<Integer>();
+        bounds.add(start);
+        var depth = 0; //of both parentheses and DO ... END blocks
+        var next = start + segment;
+        for (int index = start; index + 1 < buffer.size(); index++) {
+            var boundary = switch (buffer.kind(index)) {
+                case OPEN_PAREN, DO -> {
+                    depth++;
+                    yield false;
+                }
+                case CLOSE_PAREN -> {
+                    depth--;
+                    yield false;
+                }
+                case END -> --depth == 0 && switch (buffer.kind(index + 1)) {
+                    case LET, DEF, IF, FOR, RETURN -> true;
+                    default -> false;
+                };
+                case SEMICOLON -> depth == 0;
+                case null, default -> false;
+            };
+            if (boundary && index + 1 >= next) {
+                bounds.add(index + 1);
+                next = index + 1 + segment;
+            }
         }
-        else if (tokens.match("RETURN")) {
-            return parseReturnStmt();
+        bounds.add(buffer.size());
+        return bounds;
+    }
+
+    /**
+     * Parses the next top-level statement, or returns {@code null} once the
+     * input is exhausted, so that each statement can be executed as soon as it
+     * is parsed. Tokens are only pulled from the source up to the end of the
+     * statement.
+     *
+     * <p>When locating, offsets are only kept for the nodes of the statement
+     * last parsed, so nothing is retained from statements the caller has
+     * finished with.
+     */
+    public Ast.@Nullable Stmt parseNextStmt() throws ParseException {
+        if (offsets != null) {
+            offsets.clear();
+        }
+        segments = List.of();
+        return tokens.has(0) ? parseStmt() : null;
+    }
+
+    /**
+     * The statements of a source which could be parsed, along with the errors
+     * found in the rest, in order.
+     */
+    public record Recovered(Ast.Source source, List<ParseException> errors) {}
+
+    /**
+     * Parses a source without stopping at the first error, so that all syntax
+     * errors are reported by a single pass. When a statement fails to parse,
+     * the error is recorded and tokens are skipped up to a likely statement
+     * boundary: just past a {@code ;} or {@code END}, or up to a {@code LET}
+     * or {@code DEF}. The statement is left out of the source, and parsing
+     * resumes from there.
+     *
+     * <p>A lexing error ends the token stream, since the lexer cannot resume
+     * after one, so the source only includes statements before it.
+     */
+    public Recovered parseSourceRecovering() {
+        var statements = new ArrayList<Ast.Stmt>();
+        var errors = new ArrayList<ParseException>();
+        while (true) {
+            var start = tokens.index;
+            try {
+                if (!tokens.has(0)) {
+                    break;
+                }
+                statements.add(parseStmt());
+            } catch (ParseException exception) {
+                LOGGER.debug("Recovering from {}", exception.getMessage());
+                errors.add(exception);
+                try {
+                    tokens.synchronize(start);
+                } catch (ParseException lexing) {
+                    errors.add(lexing);
+                }
+            }
         }
-        else {
-            return parseExpressionOrAssignmentStmt();
+        return new Recovered(new Ast.Source(statements), errors);
+    }
+
+    public Ast.Stmt parseStmt() throws ParseException {
+        var start = tokens.start(0);
+        switch (tokens.kind(0)) {
+            case LET -> {
+                tokens.index++;
+                return located(parseLetStmt(), start);
+            }
+            case DEF -> {
+                tokens.index++;
+                return located(parseDefStmt(), start);
+            }
+            case IF -> {
+                tokens.index++;
+                return located(parseIfStmt(), start);
+            }
+            case FOR -> {
+                tokens.index++;
+                return located(parseForStmt(), start);
+            }
+            case RETURN -> {
+                tokens.index++;
+                return located(parseReturnStmt(), start);
+            }
+            case null, default -> {
+                return located(parseExpressionOrAssignmentStmt(), start);
+            }
         }
     }
 
     private Ast.Stmt.Let parseLetStmt() throws ParseException {
         if (!tokens.match(Token.Type.IDENTIFIER)) {
-            throw new ParseException("No identifier!");
+            throw error("No identifier!");
         }
-        var name = tokens.get(-1).literal();
+        var name = name(-1);
         Ast.Expr value = null;
-        if (tokens.match("=")) {
+        if (tokens.match(Token.Kind.EQUALS)) {
             value = parseExpr();
         }
-        if (!tokens.match(";")) {
-            throw new ParseException("Missing semicolon!");
+        if (!tokens.match(Token.Kind.SEMICOLON)) {
+            throw error("Missing semicolon!");
         }
         return new Ast.Stmt.Let(name, Optional.ofNullable(value));
     }
 
     private Ast.Stmt.Def parseDefStmt() throws ParseException {
         if (!tokens.match(Token.Type.IDENTIFIER)) {
-            throw new ParseException("No identifier!");
+            throw error("No identifier!");
         }
         boolean multiple_params = false;
-        var name = tokens.get(-1).literal();
+        var name = name(-1);
         var parameters = new ArrayList<String>();
         var body = new ArrayList<Ast.Stmt>();
-        if (tokens.match("(")){
+        if (tokens.match(Token.Kind.OPEN_PAREN)){
             //enters while-loop to check for identifiers
-            while (!tokens.match(")") && tokens.has(0)) {
+            while (!tokens.match(Token.Kind.CLOSE_PAREN) && tokens.has(0)) {
                 if (multiple_params) {
-                    if (tokens.match(",")) {
+                    if (tokens.match(Token.Kind.COMMA)) {
                         if (tokens.match(Token.Type.IDENTIFIER)) {
-                            parameters.add(tokens.get(-1).literal());
+                            parameters.add(name(-1));
                         }
                         else {  //exception handling
-                            throw new ParseException("Missing identifier after comma!");
+                            throw error("Missing identifier after comma!");
                         }
                     }
+                    else {
+                        throw error("Missing comma between parameters!");
+                    }
                 }
                 else {
                     if (tokens.match(Token.Type.IDENTIFIER)) {
-                        parameters.add(tokens.get(-1).literal());
+                        parameters.add(name(-1));
                     }
                 }
                 multiple_params = true;
             }
         }
-        if (tokens.match("DO")) {
-            while (!tokens.match("END") && tokens.has(0)) {
+        if (tokens.match(Token.Kind.DO)) {
+            while (!tokens.match(Token.Kind.END) && tokens.has(0)) {
                 body.add(parseStmt());
             }
         }
@@ -118,12 +450,12 @@ public final class Parser {
         var condition = parseExpr();
         var thenBody = new ArrayList<Ast.Stmt>();
         var elseBody = new ArrayList<Ast.Stmt>();
-        if (!tokens.match("DO")) {
-            throw new ParseException("Syntax error: missing DO");
+        if (!tokens.match(Token.Kind.DO)) {
+            throw error("Syntax error: missing DO");
         }
-        while (!tokens.match("END")) {
-            if (tokens.match("ELSE")) {
-                if (!tokens.peek("END")) {
+        while (!tokens.match(Token.Kind.END)) {
+            if (tokens.match(Token.Kind.ELSE)) {
+                if (!tokens.peek(Token.Kind.END)) {
                     elseBody.add(parseStmt());
                 }
             }
@@ -136,18 +468,18 @@ public final class Parser {
 
     private Ast.Stmt.For parseForStmt() throws ParseException {
         if (!tokens.match(Token.Type.IDENTIFIER)) {
-            throw new ParseException("No identifier!");
+            throw error("No identifier!");
         }
-        var name = tokens.get(-1).literal();
-        if (!tokens.match("IN")) {
-            throw new ParseException("No IN!");
+        var name = name(-1);
+        if (!tokens.match(Token.Kind.IN)) {
+            throw error("No IN!");
         }
         var expression = parseExpr();
-        if (!tokens.match("DO")) {
-            throw new ParseException("No DO!");
+        if (!tokens.match(Token.Kind.DO)) {
+            throw error("No DO!");
         }
         var stmt_list = new ArrayList<Ast.Stmt>();
-        while (!tokens.match("END")) {
+        while (!tokens.match(Token.Kind.END)) {
             stmt_list.add(parseStmt());
         }
         return new Ast.Stmt.For(name, expression, stmt_list);
@@ -155,222 +487,213 @@ public final class Parser {
 
     private Ast.Stmt.Return parseReturnStmt() throws ParseException {
         Ast.Expr value = null;
-        if (tokens.match(";")) {
+        if (tokens.match(Token.Kind.SEMICOLON)) {
             return new Ast.Stmt.Return(Optional.ofNullable(value));
         }
         value = parseExpr();
-        if (tokens.match(";")) {
+        if (tokens.match(Token.Kind.SEMICOLON)) {
             return new Ast.Stmt.Return(Optional.ofNullable(value));
         }
-        throw new ParseException("Syntax error: missing semicolon!");
+        throw error("Syntax error: missing semicolon!");
     }
 
     private Ast.Stmt parseExpressionOrAssignmentStmt() throws ParseException {
         var expression = parseExpr();
         Ast.Expr value = null;
         boolean assignment = false;
-        if (tokens.match(";")) {
+        if (tokens.match(Token.Kind.SEMICOLON)) {
             return new Ast.Stmt.Expression(expression);
         }
-        else if (tokens.match("=")) {
+        else if (tokens.match(Token.Kind.EQUALS)) {
             value = parseExpr();
             assignment = true;
         }
-        if (tokens.match(";") && assignment) {
+        if (tokens.match(Token.Kind.SEMICOLON) && assignment) {
             return new Ast.Stmt.Assignment(expression, value);
         }
-        throw new ParseException("Incorrect Syntax!");
+        throw error("Incorrect Syntax!");
     }
 
     public Ast.Expr parseExpr() throws ParseException {
         try{
-            return parseLogicalExpr();  //simply calls logical expression
+            return parseBinaryExpr(LOWEST);
         }
-        catch (Exception exception) {
-            throw new ParseException("Logical expression not valid");
+        catch (ParseException exception) {
+            throw exception;
         }
-    }
-
-    private Ast.Expr parseLogicalExpr() throws ParseException {
-        var comp_expr = parseComparisonExpr();
-        while (tokens.match("AND") || tokens.match("OR")) {
-            var operator = tokens.get(-1).literal();
-            var right = parseComparisonExpr();
-            comp_expr = new Ast.Expr.Binary(operator, comp_expr, right);
-        }
-        return comp_expr;
-    }
-
-    private Ast.Expr parseComparisonExpr() throws ParseException {
-        var add_expr = parseAdditiveExpr();
-        while (tokens.match("<") || tokens.match("<=") | tokens.match(">")
-                | tokens.match(">=") | tokens.match("==") | tokens.match("!=")) {
-            var operator = tokens.get(-1).literal();
-            var right = parseAdditiveExpr();
-            add_expr = new Ast.Expr.Binary(operator, add_expr, right);
-        }
-        return add_expr;
-    }
-
-    private Ast.Expr parseAdditiveExpr() throws ParseException {
-        var mul_expr = parseMultiplicativeExpr();
-        while (tokens.match("+") || tokens.match("-")) {
-            var operator = tokens.get(-1).literal();
-            var right = parseMultiplicativeExpr();
-            mul_expr = new Ast.Expr.Binary(operator, mul_expr, right);
+        catch (Exception exception) {
+            throw error("Logical expression not valid");
         }
-        return mul_expr;
     }
 
-    private Ast.Expr parseMultiplicativeExpr() throws ParseException {
-        var second_expr = parseSecondaryExpr();
-        while (tokens.match("*") || tokens.match("/")) {
-            var operator = tokens.get(-1).literal();
-            var right = parseSecondaryExpr();
-            second_expr = new Ast.Expr.Binary(operator, second_expr, right);
+    /**
+     * Parses a binary expression of operators binding at least as tightly as
+     * the given precedence by precedence climbing: after each operand, any
+     * operator binding tightly enough takes it as its left operand, and its
+     * right operand is parsed recursively with only tighter (or, for right
+     * associative operators, equal) operators. Each operand is therefore
+     * parsed by a single loop rather than one method per precedence level.
+     */
+    private Ast.Expr parseBinaryExpr(int precedence) throws ParseException {
+        var start = tokens.start(0);
+        var left = parseSecondaryExpr();
+        while (true) {
+            var operator = OPERATORS.get(tokens.kind(0));
+            if (operator == null || operator.precedence() < precedence) {
+                return left;
+            }
+            tokens.index++;
+            var literal = name(-1);
+            var right = parseBinaryExpr(switch (operator.associativity()) {
+                case LEFT -> operator.precedence() + 1;
+                case RIGHT -> operator.precedence();
+            });
+            left = located(new Ast.Expr.Binary(literal, left, right), start);
         }
-        return second_expr;
     }
 
     private Ast.Expr parseSecondaryExpr() throws ParseException {
+        var start = tokens.start(0);
         var primary_expr = parsePrimaryExpr();
-        while (tokens.match(".") ) {
+        while (tokens.match(Token.Kind.PERIOD) ) {
             if (tokens.match(Token.Type.IDENTIFIER)) {
-                var identifier = tokens.get(-1).literal();
+                var identifier = name(-1);
                 var list_of_params = new ArrayList<Ast.Expr>();
-                if (tokens.match("(")) {
-                    while (!tokens.match(")")) {
-                        if (tokens.peek(")")) {
+                if (tokens.match(Token.Kind.OPEN_PAREN)) {
+                    while (!tokens.match(Token.Kind.CLOSE_PAREN)) {
+                        var index = tokens.index;
+                        if (tokens.peek(Token.Kind.CLOSE_PAREN)) {
                             list_of_params.add(parseExpr());
                         }
-                        if (tokens.peek(",")) {
+                        if (tokens.peek(Token.Kind.COMMA)) {
                             list_of_params.add(parseExpr());
                         }
+                        if (tokens.index == index) {  //would otherwise loop forever
+                            throw error("Invalid method arguments!");
+                        }
                     }
                     //create list of expr, keep calling group and add to list until )
                     //outside of this loop return new .method and pass in List
                 }
                 else {
-                    return new Ast.Expr.Property(primary_expr, identifier);
+                    return located(new Ast.Expr.Property(primary_expr, identifier), start);
                 }
-                primary_expr = new Ast.Expr.Method(primary_expr, identifier, list_of_params);
+                primary_expr = located(new Ast.Expr.Method(primary_expr, identifier, list_of_params), start);
             }
             else {
-                throw new ParseException("No identifier following period!");
+                throw error("No identifier following period!");
             }
         }
         return primary_expr;
     }
 
     private Ast.Expr parsePrimaryExpr() throws ParseException {
+        var start = tokens.start(0);
         try {
-            //literal
-            if (tokens.peek("NIL") || tokens.peek("TRUE") || tokens.peek("FALSE")
-                    || tokens.peek(Token.Type.INTEGER) || tokens.peek(Token.Type.DECIMAL)
-                    || tokens.peek(Token.Type.CHARACTER) || tokens.peek(Token.Type.STRING)) {
-                return parseLiteralExpr();
-            }
-            //group
-            else if (tokens.peek("(")) {
-                return parseGroupExpr();
-            }
-            //object
-            else if (tokens.match("OBJECT")) {
-                return parseObjectExpr();
+            switch (tokens.kind(0)) {
+                //literal
+                case NIL, TRUE, FALSE, INTEGER, DECIMAL, CHARACTER, STRING -> {
+                    return located(parseLiteralExpr(), start);
+                }
+                //group
+                case OPEN_PAREN -> {
+                    return located(parseGroupExpr(), start);
+                }
+                //object
+                case OBJECT -> {
+                    tokens.index++;
+                    return located(parseObjectExpr(), start);
+                }
+                case null, default -> {}
             }
             //var_or_fun
-            else if (tokens.match(Token.Type.IDENTIFIER)) {
-                return parseVariableOrFunctionExpr();
+            if (tokens.match(Token.Type.IDENTIFIER)) {
+                return located(parseVariableOrFunctionExpr(), start);
             }
         }
+        catch (ParseException exception) {
+            throw exception;
+        }
         catch (Exception exception ){
-            throw new ParseException("Invalid primary expression!");
+            throw error("Invalid primary expression!");
         }
         return null;
     }
 
     private Ast.Expr.Literal parseLiteralExpr() throws ParseException {
-        var ret_obj = tokens.get(0).literal();
-        var ret_type = tokens.get(0).type();
+        var ret_obj = tokens.literal(0);
+        var ret_kind = tokens.kind(0);
+        var ret_type = tokens.type(0);
         tokens.index++;
-        System.out.println(ret_obj);
-        if (Objects.equals(ret_obj, "NIL")) {
+        LOGGER.trace("Parsed literal {}", ret_obj);
+        if (ret_kind == Token.Kind.NIL) {
             return new Ast.Expr.Literal(null);
         }
-        else if (Objects.equals(ret_obj, "TRUE")) {
+        else if (ret_kind == Token.Kind.TRUE) {
             return new Ast.Expr.Literal(true);
         }
-        else if (Objects.equals(ret_obj, "FALSE")) {
+        else if (ret_kind == Token.Kind.FALSE) {
             return new Ast.Expr.Literal(false);
         }
-        else if (ret_type == Token.Type.INTEGER) {
-            return new Ast.Expr.Literal(new BigInteger(ret_obj));
-        }
-        else if (ret_type == Token.Type.DECIMAL) {
-            return new Ast.Expr.Literal(new BigDecimal(ret_obj));
-        }
-        else if (ret_type == Token.Type.CHARACTER) {
-            return new Ast.Expr.Literal(ret_obj.charAt(1));
-        }
-        else if (ret_obj.charAt(0) == '\"' || ret_obj.charAt(0) == '\'') {
-            String escape_escaper = ret_obj.substring(1, ret_obj.length() - 1).replace("\\n", "\n");
-            return new Ast.Expr.Literal(escape_escaper);
-        }
-        return new Ast.Expr.Literal(ret_obj);
+        return new Ast.Expr.Literal(constants.value(ret_type, ret_obj));
     }
 
     private Ast.Expr.Group parseGroupExpr() throws ParseException {
-//        checkState(tokens.match("("));  //moves index
+//        checkState(tokens.match(Token.Kind.OPEN_PAREN));  //moves index
 //        var ret_store = parseExpr();
-//        if (tokens.match("(")) {
-//            checkState(tokens.match("("));
+//        if (tokens.match(Token.Kind.OPEN_PAREN)) {
+//            checkState(tokens.match(Token.Kind.OPEN_PAREN));
 //            return new Ast.Expr.Group(ret_store);
 //        }
 //        throw new ParseException("Missing closing parenthesis!");
-        checkState(tokens.match("("));  //moves index
+        checkState(tokens.match(Token.Kind.OPEN_PAREN));  //moves index
         var ret_store = parseExpr();
-        if (tokens.match(")")) {
+        if (tokens.match(Token.Kind.CLOSE_PAREN)) {
             return new Ast.Expr.Group(ret_store);
         }
-        throw new ParseException("Missing closing parenthesis!");
+        throw error("Missing closing parenthesis!");
     }
 
     private Ast.Expr.ObjectExpr parseObjectExpr() throws ParseException {
         String name = null;
         var fields = new ArrayList<Ast.Stmt.Let>();
         var methods = new ArrayList<Ast.Stmt.Def>();
-        if (tokens.match(Token.Type.IDENTIFIER, "DO")) {
-            name = tokens.get(-2).literal();
+        if (tokens.match(Token.Type.IDENTIFIER, Token.Kind.DO)) {
+            name = name(-2);
         }
-        else if (!tokens.match("DO")) {
-            throw new ParseException("Missing DO in statement!");
+        else if (!tokens.match(Token.Kind.DO)) {
+            throw error("Missing DO in statement!");
         }
-        while (!tokens.match("END")) {
-            if (tokens.match("LET")) {
-                fields.add(parseLetStmt());
+        while (!tokens.match(Token.Kind.END)) {
+            var start = tokens.start(0);
+            if (tokens.match(Token.Kind.LET)) {
+                fields.add(located(parseLetStmt(), start));
             }
-            else if (tokens.match("DEF")) {
-                methods.add(parseDefStmt());
+            else if (tokens.match(Token.Kind.DEF)) {
+                methods.add(located(parseDefStmt(), start));
+            }
+            else {
+                throw error("Expected a field or method!");
             }
         }
         return new Ast.Expr.ObjectExpr(Optional.ofNullable(name), fields, methods);
     }
 
     private Ast.Expr parseVariableOrFunctionExpr() throws ParseException {
-        var name = tokens.get(-1).literal();
+        var name = name(-1);
         boolean multiple_expr = false;
-        if (!tokens.match("(")) {
+        if (!tokens.match(Token.Kind.OPEN_PAREN)) {
             return new Ast.Expr.Variable(name);
         }
         else {
             var arguments = new ArrayList<Ast.Expr>();
-            while (!tokens.match(")")) {
+            while (!tokens.match(Token.Kind.CLOSE_PAREN)) {
                 if (!multiple_expr) {
                     arguments.add(parseExpr());
                 }
                 else {
-                    if (!tokens.match(",")) {
-                        throw new ParseException("Syntax error: missing comma!");
+                    if (!tokens.match(Token.Kind.COMMA)) {
+                        throw error("Syntax error: missing comma!");
                     }
                     arguments.add(parseExpr());
                 }
@@ -380,63 +703,263 @@ public final class Parser {
         }
     }
 
-    private static final class TokenStream {
+    /**
+     * Returns the pooled name of the token at (index + offset).
+     */
+    private String name(int offset) throws ParseException {
+        return constants.name(tokens.literal(offset));
+    }
 
-        private final List<Token> tokens;
-        private int index = 0;
+    /**
+     * Records the offset of a new node if locating, first replacing an
+     * expression with its shared instance when interning. A shared instance
+     * keeps the offset of its first occurrence.
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends Ast> T located(T ast, int offset) {
+        if (interner != null && ast instanceof Ast.Expr expr) {
+            ast = (T) interner.intern(expr);
+        }
+        if (offsets != null && offset >= 0) {
+            offsets.putIfAbsent(ast, offset);
+        }
+        return ast;
+    }
+
+    private ParseException error(String message) throws ParseException {
+        return tokens.error(message);
+    }
 
-        private TokenStream(List<Token> tokens) {
-            this.tokens = tokens;
+    /**
+     * Tokens are buffered in a fixed ring window covering a couple of tokens
+     * behind the current index (for {@code literal(-2)}) and the tokens being
+     * peeked ahead. Anything older is dropped as new tokens are pulled.
+     *
+     * <p>The window stores each token's kind and span rather than a
+     * {@link Token}. For {@link TokenSource#resident()} sources the literal is
+     * only requested from the source the first time the parser needs it;
+     * otherwise it has to be taken before the source moves on.
+     *
+     * <p>When parsing a {@link TokenBuffer}, all tokens are already available
+     * and are read from the buffer directly instead of the window.
+     */
+    static final class TokenStream {
+
+        private static final int WINDOW = 8; //must be a power of two
+
+        private final @Nullable TokenSource source;
+        private final @Nullable TokenBuffer buffer;
+        private final boolean resident;
+        private final Token.Kind[] kinds = new Token.Kind[WINDOW];
+        private final int[] starts = new int[WINDOW];
+        private final int[] lengths = new int[WINDOW];
+        private final String[] literals = new String[WINDOW];
+        private int size = 0;  //total number of tokens pulled from the source
+        private boolean exhausted = false;
+        int index = 0;
+
+        TokenStream(TokenSource source) {
+            this.source = source;
+            this.buffer = null;
+            this.resident = source.resident();
+        }
+
+        TokenStream(TokenBuffer buffer) {
+            this.source = null;
+            this.buffer = buffer;
+            this.resident = true;
+            this.size = buffer.size();
+            this.exhausted = true;
         }
 
         /**
          * Returns true if there is a token at (index + offset).
          */
-        public boolean has(int offset) {
-            return index + offset < tokens.size();
+        public boolean has(int offset) throws ParseException {
+            var position = index + offset;
+            while (position >= size && !exhausted) {
+                try {
+                    var kind = source.advance();
+                    if (kind == null) {
+                        exhausted = true;
+                    } else {
+                        var slot = size++ & (WINDOW - 1);
+                        kinds[slot] = kind;
+                        starts[slot] = source.start();
+                        lengths[slot] = source.length();
+                        literals[slot] = resident ? null : source.literal(starts[slot], lengths[slot]);
+                    }
+                } catch (LexException exception) {
+                    exhausted = true;  //the lexer cannot continue past an error
+                    throw new ParseException(exception.getMessage(), exception.offset());
+                }
+            }
+            return position < size;
+        }
+
+        /**
+         * Returns the position of the token at (index + offset), which is its
+         * buffer index or, without a buffer, its window slot.
+         */
+        private int slot(int offset) throws ParseException {
+            var position = index + offset;
+            checkState(has(offset) && position >= 0);
+            if (buffer != null) {
+                return position;
+            }
+            checkState(position >= size - WINDOW);
+            return position & (WINDOW - 1);
+        }
+
+        /**
+         * Returns the kind of the token at (index + offset), or {@code null}
+         * if there is no such token, so callers can switch on it directly.
+         */
+        public Token.@Nullable Kind kind(int offset) throws ParseException {
+            if (!has(offset)) {
+                return null;
+            }
+            var slot = slot(offset);
+            return buffer != null ? buffer.kind(slot) : kinds[slot];
+        }
+
+        /**
+         * Returns the start of the token at (index + offset), or -1 if there
+         * is no such token.
+         */
+        public int start(int offset) throws ParseException {
+            if (index + offset < 0 || !has(offset)) {
+                return -1;
+            }
+            var slot = slot(offset);
+            return buffer != null ? buffer.start(slot) : starts[slot];
+        }
+
+        /**
+         * Returns the end of the token at (index + offset), or -1 if there is
+         * no such token.
+         */
+        public int end(int offset) throws ParseException {
+            var start = start(offset);
+            if (start < 0) {
+                return -1;
+            }
+            var slot = slot(offset);
+            return start + (buffer != null ? buffer.length(slot) : lengths[slot]);
+        }
+
+        /**
+         * Returns the type of the token at (index + offset).
+         */
+        public Token.Type type(int offset) throws ParseException {
+            var slot = slot(offset);
+            return buffer != null ? buffer.type(slot) : kinds[slot].type();
         }
 
         /**
-         * Returns the token at (index + offset).
+         * Returns the literal of the token at (index + offset).
          */
-        public Token get(int offset) {
-            checkState(has(offset));
-            return tokens.get(index + offset);
+        public String literal(int offset) throws ParseException {
+            var slot = slot(offset);
+            if (buffer != null) {
+                return buffer.literal(slot);
+            } else if (literals[slot] == null) {
+                literals[slot] = source.literal(starts[slot], lengths[slot]);
+            }
+            return literals[slot];
         }
 
         /**
-         * Returns true if the next characters match their corresponding
-         * pattern. Each pattern is either a {@link Token.Type}, matching tokens
-         * of that type, or a {@link String}, matching tokens with that literal.
-         * In effect, {@code new Token(Token.Type.IDENTIFIER, "literal")} is
-         * matched by both {@code peek(Token.Type.IDENTIFIER)} and
-         * {@code peek("literal")}.
+         * Returns true if the next tokens match their corresponding pattern.
+         * Each pattern is either a {@link Token.Kind}, matching tokens of that
+         * kind, a {@link Token.Type}, matching tokens of that type, or a
+         * {@link String}, matching tokens with that literal. In effect,
+         * {@code new Token(Token.Type.IDENTIFIER, "LET")} is matched by
+         * {@code peek(Token.Kind.LET)}, {@code peek(Token.Type.IDENTIFIER)}
+         * and {@code peek("LET")}. Overloads (rather than varargs) avoid
+         * allocating an array for every attempted match.
          */
-        public boolean peek(Object... patterns) {
-            if (!has(patterns.length - 1)) {
+        public boolean peek(Object first) throws ParseException {
+            return has(0) && matches(0, first);
+        }
+
+        public boolean peek(Object first, Object second) throws ParseException {
+            return has(1) && matches(0, first) && matches(1, second);
+        }
+
+        private boolean matches(int offset, Object pattern) throws ParseException {
+            if (pattern instanceof Token.Kind kind) {
+                return kind(offset) == kind;
+            } else if (pattern instanceof Token.Type type) {
+                return type(offset) == type;
+            }
+            checkState(pattern instanceof String, pattern);
+            return literalEquals(offset, pattern);
+        }
+
+        /**
+         * Compares the literal of the token at (index + offset) with the
+         * pattern, leaving the literal unbuilt if it has not been already.
+         */
+        private boolean literalEquals(int offset, Object pattern) throws ParseException {
+            if (!(pattern instanceof String string)) {
                 return false;
             }
-            //patterns.length is # of args passed in
-            for (int offset = 0; offset < patterns.length; offset++) {
-                var token = tokens.get(index + offset);
-                var pattern = patterns[offset];
-                checkState(pattern instanceof Token.Type || pattern instanceof String, pattern);
-                if (!token.type().equals(pattern) && !token.literal().equals(pattern)) {
-                    return false;
-                }
+            var slot = slot(offset);
+            if (buffer != null) {
+                return buffer.literalEquals(slot, string);
+            } else if (literals[slot] != null) {
+                return literals[slot].equals(string);
             }
-            return true;
+            return source.literalEquals(starts[slot], lengths[slot], string);
         }
 
         /**
          * Equivalent to peek, but also advances the token stream.
          */
-        public boolean match(Object... patterns) {
-            var peek = peek(patterns);
-            if (peek) {
-                index += patterns.length;
+        public boolean match(Object first) throws ParseException {
+            if (peek(first)) {
+                index += 1;
+                return true;
+            }
+            return false;
+        }
+
+        public boolean match(Object first, Object second) throws ParseException {
+            if (peek(first, second)) {
+                index += 2;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Creates an exception located at the next token or, at the end of
+         * input, just after the last one.
+         */
+        public ParseException error(String message) throws ParseException {
+            return new ParseException(message, has(0) ? start(0) : end(-1));
+        }
+
+        /**
+         * Skips tokens after an error in a statement beginning at the given
+         * index, always moving past that index so that recovery makes
+         * progress.
+         */
+        public void synchronize(int start) throws ParseException {
+            index = Math.max(index, start + 1);
+            while (has(0)) {
+                switch (kind(0)) {
+                    case SEMICOLON, END -> {
+                        index++;
+                        return;
+                    }
+                    case LET, DEF -> {
+                        return;
+                    }
+                    case null, default -> index++;
+                }
             }
-            return peek;
         }
 
     }
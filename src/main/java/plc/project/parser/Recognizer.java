@@ -0,0 +1,357 @@
+package plc.project.parser;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import plc.project.lexer.Token;
+import plc.project.lexer.TokenBuffer;
+import plc.project.lexer.TokenSource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Checks that a source is well-formed without building its AST, for callers
+ * which only need to accept or reject it. Each method follows the
+ * corresponding method of {@link Parser} token for token, with the same
+ * errors at the same offsets, but only moves through the tokens: no nodes,
+ * lists or literal values are created, and literals are never built from
+ * the source apart from numbers, to reject those the parser cannot
+ * convert.
+ *
+ * <p>Any change to the grammar in {@link Parser} must be made here as well.
+ */
+public final class Recognizer {
+
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private final Parser.TokenStream tokens;
+
+    public Recognizer(TokenSource tokens) {
+        this.tokens = new Parser.TokenStream(tokens);
+    }
+
+    public Recognizer(TokenBuffer tokens) {
+        this.tokens = new Parser.TokenStream(tokens);
+    }
+
+    /**
+     * Returns the errors {@link Parser#parseSourceRecovering()} would report,
+     * which is empty if the source is well-formed.
+     */
+    public List<ParseException> check() {
+        List<ParseException> errors = List.of();
+        while (true) {
+            var start = tokens.index;
+            try {
+                if (!tokens.has(0)) {
+                    return errors;
+                }
+                recognizeStmt();
+            } catch (ParseException exception) {
+                LOGGER.debug("Recovering from {}", exception.getMessage());
+                errors = errors.isEmpty() ? new ArrayList<>() : errors;
+                errors.add(exception);
+                try {
+                    tokens.synchronize(start);
+                } catch (ParseException lexing) {
+                    errors.add(lexing);
+                }
+            }
+        }
+    }
+
+    /**
+     * Throws the exception {@link Parser#parseSource()} would, if any.
+     */
+    public void recognizeSource() throws ParseException {
+        while (tokens.has(0)) {
+            recognizeStmt();
+        }
+    }
+
+    public void recognizeStmt() throws ParseException {
+        switch (tokens.kind(0)) {
+            case LET -> {
+                tokens.index++;
+                recognizeLetStmt();
+            }
+            case DEF -> {
+                tokens.index++;
+                recognizeDefStmt();
+            }
+            case IF -> {
+                tokens.index++;
+                recognizeIfStmt();
+            }
+            case FOR -> {
+                tokens.index++;
+                recognizeForStmt();
+            }
+            case RETURN -> {
+                tokens.index++;
+                recognizeReturnStmt();
+            }
+            case null, default -> recognizeExpressionOrAssignmentStmt();
+        }
+    }
+
+    private void recognizeLetStmt() throws ParseException {
+        if (!tokens.match(Token.Type.IDENTIFIER)) {
+            throw tokens.error("No identifier!");
+        }
+        if (tokens.match(Token.Kind.EQUALS)) {
+            recognizeExpr();
+        }
+        if (!tokens.match(Token.Kind.SEMICOLON)) {
+            throw tokens.error("Missing semicolon!");
+        }
+    }
+
+    private void recognizeDefStmt() throws ParseException {
+        if (!tokens.match(Token.Type.IDENTIFIER)) {
+            throw tokens.error("No identifier!");
+        }
+        var multiple = false;
+        if (tokens.match(Token.Kind.OPEN_PAREN)) {
+            while (!tokens.match(Token.Kind.CLOSE_PAREN) && tokens.has(0)) {
+                if (multiple) {
+                    if (!tokens.match(Token.Kind.COMMA)) {
+                        throw tokens.error("Missing comma between parameters!");
+                    } else if (!tokens.match(Token.Type.IDENTIFIER)) {
+                        throw tokens.error("Missing identifier after comma!");
+                    }
+                } else {
+                    tokens.match(Token.Type.IDENTIFIER);
+                }
+                multiple = true;
+            }
+        }
+        if (tokens.match(Token.Kind.DO)) {
+            while (!tokens.match(Token.Kind.END) && tokens.has(0)) {
+                recognizeStmt();
+            }
+        }
+    }
+
+    private void recognizeIfStmt() throws ParseException {
+        recognizeExpr();
+        if (!tokens.match(Token.Kind.DO)) {
+            throw tokens.error("Syntax error: missing DO");
+        }
+        while (!tokens.match(Token.Kind.END)) {
+            if (tokens.match(Token.Kind.ELSE)) {
+                if (!tokens.peek(Token.Kind.END)) {
+                    recognizeStmt();
+                }
+            } else {
+                recognizeStmt();
+            }
+        }
+    }
+
+    private void recognizeForStmt() throws ParseException {
+        if (!tokens.match(Token.Type.IDENTIFIER)) {
+            throw tokens.error("No identifier!");
+        }
+        if (!tokens.match(Token.Kind.IN)) {
+            throw tokens.error("No IN!");
+        }
+        recognizeExpr();
+        if (!tokens.match(Token.Kind.DO)) {
+            throw tokens.error("No DO!");
+        }
+        while (!tokens.match(Token.Kind.END)) {
+            recognizeStmt();
+        }
+    }
+
+    private void recognizeReturnStmt() throws ParseException {
+        if (tokens.match(Token.Kind.SEMICOLON)) {
+            return;
+        }
+        recognizeExpr();
+        if (!tokens.match(Token.Kind.SEMICOLON)) {
+            throw tokens.error("Syntax error: missing semicolon!");
+        }
+    }
+
+    private void recognizeExpressionOrAssignmentStmt() throws ParseException {
+        recognizeExpr();
+        if (tokens.match(Token.Kind.SEMICOLON)) {
+            return;
+        }
+        var assignment = false;
+        if (tokens.match(Token.Kind.EQUALS)) {
+            recognizeExpr();
+            assignment = true;
+        }
+        if (!tokens.match(Token.Kind.SEMICOLON) || !assignment) {
+            throw tokens.error("Incorrect Syntax!");
+        }
+    }
+
+    public void recognizeExpr() throws ParseException {
+        recognizeBinaryExpr(Parser.LOWEST);
+    }
+
+    private void recognizeBinaryExpr(int precedence) throws ParseException {
+        recognizeSecondaryExpr();
+        while (true) {
+            var operator = Parser.OPERATORS.get(tokens.kind(0));
+            if (operator == null || operator.precedence() < precedence) {
+                return;
+            }
+            tokens.index++;
+            recognizeBinaryExpr(switch (operator.associativity()) {
+                case LEFT -> operator.precedence() + 1;
+                case RIGHT -> operator.precedence();
+            });
+        }
+    }
+
+    private void recognizeSecondaryExpr() throws ParseException {
+        recognizePrimaryExpr();
+        while (tokens.match(Token.Kind.PERIOD)) {
+            if (!tokens.match(Token.Type.IDENTIFIER)) {
+                throw tokens.error("No identifier following period!");
+            }
+            if (!tokens.match(Token.Kind.OPEN_PAREN)) {
+                return;
+            }
+            while (!tokens.match(Token.Kind.CLOSE_PAREN)) {
+                var index = tokens.index;
+                if (tokens.peek(Token.Kind.COMMA)) {
+                    recognizeExpr();
+                }
+                if (tokens.index == index) {
+                    throw tokens.error("Invalid method arguments!");
+                }
+            }
+        }
+    }
+
+    private void recognizePrimaryExpr() throws ParseException {
+        switch (tokens.kind(0)) {
+            case NIL, TRUE, FALSE, CHARACTER, STRING -> tokens.index++;
+            case INTEGER, DECIMAL -> {
+                var literal = tokens.literal(0);
+                var valid = tokens.kind(0) == Token.Kind.INTEGER ? isInteger(literal) : isDecimal(literal);
+                tokens.index++;
+                if (!valid) {
+                    throw tokens.error("Invalid primary expression!");
+                }
+            }
+            case OPEN_PAREN -> recognizeGroupExpr();
+            case OBJECT -> {
+                tokens.index++;
+                recognizeObjectExpr();
+            }
+            case null, default -> {
+                if (tokens.match(Token.Type.IDENTIFIER)) {
+                    recognizeVariableOrFunctionExpr();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns true if the literal is a sign and digits, which is what
+     * {@link java.math.BigInteger} accepts. The lexer also types literals
+     * such as {@code 1e5} and {@code 2.5} (before a period) as integers.
+     */
+    private static boolean isInteger(String literal) {
+        var start = literal.startsWith("+") || literal.startsWith("-") ? 1 : 0;
+        if (start == literal.length()) {
+            return false;
+        }
+        for (int i = start; i < literal.length(); i++) {
+            if (Character.digit(literal.charAt(i), 10) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if {@link java.math.BigDecimal} accepts the literal: a
+     * sign, digits with at most one period, and an exponent whose scale fits
+     * in an {@code int}. The lexer may carry a comment or a lone {@code /}
+     * into a decimal literal.
+     */
+    private static boolean isDecimal(String literal) {
+        var i = literal.startsWith("+") || literal.startsWith("-") ? 1 : 0;
+        var digits = 0;
+        var fraction = 0;
+        var period = false;
+        for (; i < literal.length(); i++) {
+            var c = literal.charAt(i);
+            if (c == '.' && !period) {
+                period = true;
+            } else if (Character.digit(c, 10) >= 0) {
+                digits++;
+                fraction += period ? 1 : 0;
+            } else {
+                break;
+            }
+        }
+        if (digits == 0) {
+            return false;
+        } else if (i == literal.length()) {
+            return true;
+        } else if (literal.charAt(i) != 'e' && literal.charAt(i) != 'E') {
+            return false;
+        }
+        var exponent = literal.substring(i + 1);
+        var start = exponent.startsWith("+") || exponent.startsWith("-") ? 1 : 0;
+        if (!isInteger(exponent)) {
+            return false;
+        }
+        //BigDecimal allows at most 10 digits after leading zeros
+        var significant = exponent.substring(start).replaceFirst("^0+", "");
+        if (significant.length() > 10) {
+            return false;
+        }
+        var scale = fraction - (significant.isEmpty() ? 0 : Long.parseLong(exponent.substring(0, start) + significant));
+        return scale >= Integer.MIN_VALUE && scale <= Integer.MAX_VALUE;
+    }
+
+    private void recognizeGroupExpr() throws ParseException {
+        checkState(tokens.match(Token.Kind.OPEN_PAREN));
+        recognizeExpr();
+        if (!tokens.match(Token.Kind.CLOSE_PAREN)) {
+            throw tokens.error("Missing closing parenthesis!");
+        }
+    }
+
+    private void recognizeObjectExpr() throws ParseException {
+        if (!tokens.match(Token.Type.IDENTIFIER, Token.Kind.DO) && !tokens.match(Token.Kind.DO)) {
+            throw tokens.error("Missing DO in statement!");
+        }
+        while (!tokens.match(Token.Kind.END)) {
+            if (tokens.match(Token.Kind.LET)) {
+                recognizeLetStmt();
+            } else if (tokens.match(Token.Kind.DEF)) {
+                recognizeDefStmt();
+            } else {
+                throw tokens.error("Expected a field or method!");
+            }
+        }
+    }
+
+    private void recognizeVariableOrFunctionExpr() throws ParseException {
+        if (!tokens.match(Token.Kind.OPEN_PAREN)) {
+            return;
+        }
+        var multiple = false;
+        while (!tokens.match(Token.Kind.CLOSE_PAREN)) {
+            if (multiple && !tokens.match(Token.Kind.COMMA)) {
+                throw tokens.error("Syntax error: missing comma!");
+            }
+            recognizeExpr();
+            multiple = true;
+        }
+    }
+
+}
@@ -2,19 +2,30 @@ package plc.project.Parser;
 
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
+import plc.project.lexer.LexException;
 import plc.project.lexer.Lexer;
+import plc.project.lexer.LineIndex;
 import plc.project.lexer.Token;
+import plc.project.lexer.TokenBuffer;
 import plc.project.parser.Ast;
+import plc.project.parser.AstArena;
+import plc.project.parser.AstInterner;
+import plc.project.parser.ConstantPool;
+import plc.project.parser.IncrementalParser;
 import plc.project.parser.ParseException;
 import plc.project.parser.Parser;
+import plc.project.parser.Recognizer;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Stream;
 
 /**
@@ -674,6 +685,371 @@ final class ParserTests {
         );
     }
 
+    @ParameterizedTest
+    @MethodSource
+    void testIncremental(String test, String program, int offset, int removed, String inserted) {
+        var parser = Assertions.assertDoesNotThrow(() -> new IncrementalParser(program));
+        var before = parser.source();
+        var edited = program.substring(0, offset) + inserted + program.substring(offset + removed);
+        Ast.Source expected;
+        try {
+            expected = new Parser(new Lexer(edited).lex()).parseSource();
+        } catch (LexException | ParseException exception) {
+            Assertions.assertThrows(exception.getClass(), () -> parser.edit(offset, removed, inserted));
+            expected = null;
+        }
+        if (expected != null) {
+            var ast = Assertions.assertDoesNotThrow(() -> parser.edit(offset, removed, inserted));
+            Assertions.assertEquals(expected, ast);
+            //statements before the edit are reused rather than parsed again
+            Assertions.assertSame(before.statements().getFirst(), ast.statements().getFirst());
+        }
+        //undoing the edit restores the original, even after a failed edit
+        var undone = Assertions.assertDoesNotThrow(() -> parser.edit(offset, inserted.length(), program.substring(offset, offset + removed)));
+        Assertions.assertEquals(before, undone);
+    }
+
+    public static Stream<Arguments> testIncremental() {
+        var program = """
+            LET x = 1;
+            DEF f(a, b) DO
+                RETURN a + b;
+            END
+            IF x < 2 DO
+                print("small");
+            ELSE
+                print("large");
+            END
+            LET y = f(x, 2);
+            """;
+        return Stream.of(
+            Arguments.of("Replace Literal", program, program.indexOf("2 DO"), 1, "10"),
+            Arguments.of("Rename", program, program.indexOf("a + b"), 1, "value"),
+            Arguments.of("Insert Statement", program, program.indexOf("IF"), 0, "x = x * 2;\n"),
+            Arguments.of("Delete Statement", program, program.indexOf("IF"), program.indexOf("LET y") - program.indexOf("IF"), ""),
+            Arguments.of("Whitespace", program, program.indexOf("print"), 0, "  "),
+            Arguments.of("Split Token", program, program.indexOf("large") + 2, 0, "\" + \""),
+            Arguments.of("Comment", program, program.indexOf("LET y"), 0, "//"),
+            Arguments.of("Number Lookahead", program, program.indexOf("2);") + 1, 0, ".5"),
+            Arguments.of("Append", program, program.length(), 0, "z = y;"),
+            Arguments.of("Unterminated String", program, program.indexOf("\"small\"") + 6, 1, ""),
+            Arguments.of("Missing Semicolon", program, program.indexOf("b;") + 1, 1, "")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testPosition(String test, String program, String expected) {
+        var lines = LineIndex.of(program);
+        var exception = Assertions.assertThrows(ParseException.class, () -> new Parser(new Lexer(program)).parseSource());
+        Assertions.assertEquals(expected, lines.format(exception.offset()));
+        try {
+            var buffer = TokenBuffer.lex(new Lexer(program));
+            var buffered = Assertions.assertThrows(ParseException.class, () -> new Parser(buffer).parseSource());
+            Assertions.assertEquals(exception.offset(), buffered.offset());
+        } catch (LexException lex) {
+            Assertions.assertEquals(exception.offset(), lex.offset());
+        }
+    }
+
+    public static Stream<Arguments> testPosition() {
+        return Stream.of(
+            Arguments.of("Missing Semicolon", "LET x = 1;\nLET y = 2\nLET z;", "3:1"),
+            Arguments.of("End Of Input", "LET x = 1;\nRETURN x", "2:9"),
+            Arguments.of("Invalid Expression", "LET x = 1;\n  x = (1 + ;", "2:12"),
+            Arguments.of("Lex Error", "LET x = 1;\nLET y = 'ab';", "2:9")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testRecovery(String test, String program, Ast.Source expected, List<String> errors) {
+        var lines = LineIndex.of(program);
+        var recovered = new Parser(new Lexer(program)).parseSourceRecovering();
+        Assertions.assertEquals(expected, recovered.source());
+        Assertions.assertEquals(errors, recovered.errors().stream().map(e -> lines.format(e.offset())).toList());
+    }
+
+    public static Stream<Arguments> testRecovery() {
+        var x = new Ast.Stmt.Let("x", Optional.of(new Ast.Expr.Literal(new BigInteger("1"))));
+        var y = new Ast.Stmt.Let("y", Optional.of(new Ast.Expr.Literal(new BigInteger("2"))));
+        return Stream.of(
+            Arguments.of("Valid", "LET x = 1;\nLET y = 2;", new Ast.Source(List.of(x, y)), List.of()),
+            Arguments.of("Semicolon", "LET x = 1;\nLET = 0;\nLET y = 2;", new Ast.Source(List.of(x, y)), List.of("2:5")),
+            Arguments.of("Multiple", "LET = 0;\nLET x = 1;\nx = (1 + 2;\nLET y = 2;\nRETURN", new Ast.Source(List.of(x, y)), List.of("1:5", "3:11", "5:7")),
+            Arguments.of("Missing Semicolon", "LET x = 1\nLET y = 2;", new Ast.Source(List.of(y)), List.of("2:1")),
+            Arguments.of("Block", "DEF f() DO\n  RETURN 1\nEND\nLET x = 1;\nLET y = 2;", new Ast.Source(List.of(x, y)), List.of("3:1")),
+            Arguments.of("Lex Error", "LET x = 1;\nLET y = 'ab';\nLET y = 2;", new Ast.Source(List.of(x)), List.of("2:9"))
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testParallel(String test, String program) throws LexException {
+        var buffer = TokenBuffer.lex(new Lexer(program));
+        var sequential = new Parser(buffer).locating();
+        Ast.Source expected;
+        try {
+            expected = sequential.parseSource();
+        } catch (ParseException exception) {
+            //tiny segments split the source at (nearly) every statement
+            for (var segment : List.of(1, 4, MIN_SEGMENT)) {
+                var actual = Assertions.assertThrows(ParseException.class,
+                    () -> new Parser(buffer).parseSourceParallel(ForkJoinPool.commonPool(), segment));
+                Assertions.assertEquals(exception.getMessage(), actual.getMessage());
+                Assertions.assertEquals(exception.offset(), actual.offset());
+            }
+            return;
+        }
+        for (var segment : List.of(1, 4, MIN_SEGMENT)) {
+            var parser = new Parser(buffer).locating();
+            var actual = Assertions.assertDoesNotThrow(() -> parser.parseSourceParallel(ForkJoinPool.commonPool(), segment));
+            Assertions.assertEquals(expected, actual);
+            for (int i = 0; i < expected.statements().size(); i++) {
+                Assertions.assertEquals(sequential.offset(expected.statements().get(i)), parser.offset(actual.statements().get(i)));
+            }
+        }
+    }
+
+    private static final int MIN_SEGMENT = 1 << 12;
+
+    public static Stream<Arguments> testParallel() {
+        return Stream.of(
+            Arguments.of("Empty", ""),
+            Arguments.of("Statements", "LET x = 1;\nx = x + 1;\nprint(x);\nRETURN;"),
+            Arguments.of("Blocks", """
+                DEF f(a, b) DO
+                    LET c = a;
+                    RETURN (a + b) * c;
+                END
+                IF f(1, 2) > 3 DO print("big"); ELSE print("small"); END
+                FOR i IN range(0, 10) DO f(i, i); END
+                LET x = 1;
+                """),
+            Arguments.of("Object", """
+                LET o = OBJECT DO
+                    LET field = 1;
+                    DEF method() DO RETURN field; END
+                END;
+                LET p = OBJECT Name DO LET q = 2; END;
+                o.field;
+                """),
+            Arguments.of("Large", "LET x = 0;\n" + "IF x < 10 DO\n  x = (x + 1) * 2;\nEND\nprint(\"x\", x);\n".repeat(5000)),
+            Arguments.of("Missing Semicolon", "LET x = 1;\nLET y = 2\nLET z = 3;\nLET w = 4;"),
+            Arguments.of("Object Without Semicolon", "LET x = 1;\nLET o = OBJECT DO END\nLET y = 2;"),
+            Arguments.of("Late Error", "LET x = 1;\n".repeat(10000) + "LET = 2;\nLET y = 3;")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testRecognizer(String test, String program, List<String> errors) {
+        var lines = LineIndex.of(program);
+        //the loops these used to hang in now fail instead
+        var recovered = Assertions.assertTimeoutPreemptively(Duration.ofSeconds(5), () -> new Parser(new Lexer(program)).parseSourceRecovering());
+        Assertions.assertEquals(errors, recovered.errors().stream().map(e -> lines.format(e.offset())).toList());
+        var checked = Assertions.assertTimeoutPreemptively(Duration.ofSeconds(5), () -> new Recognizer(new Lexer(program)).check());
+        Assertions.assertEquals(recovered.errors().stream().map(e -> e.getMessage() + "@" + e.offset()).toList(),
+            checked.stream().map(e -> e.getMessage() + "@" + e.offset()).toList());
+        try {
+            new Parser(new Lexer(program)).parseSource();
+            Assertions.assertDoesNotThrow(() -> new Recognizer(TokenBuffer.lex(new Lexer(program))).recognizeSource());
+        } catch (ParseException expected) {
+            var actual = Assertions.assertThrows(ParseException.class, () -> new Recognizer(new Lexer(program)).recognizeSource());
+            Assertions.assertEquals(expected.getMessage(), actual.getMessage());
+            Assertions.assertEquals(expected.offset(), actual.offset());
+        }
+    }
+
+    public static Stream<Arguments> testRecognizer() {
+        return Stream.of(
+            Arguments.of("Empty", "", List.of()),
+            Arguments.of("Valid", """
+                LET x = 1;
+                DEF f(a, b) DO
+                    IF a < b DO RETURN a; ELSE RETURN (b + 2.5) * "s"; END
+                END
+                FOR i IN range(1, 10) DO print(f(i, 'c').p); END
+                LET o = OBJECT Name DO LET y; DEF m() DO END END;
+                o.m();
+                x = NIL;
+                """, List.of()),
+            Arguments.of("Errors", "LET = 1;\nx = (1 + 2;\nLET y = 2", List.of("1:5", "2:11", "3:10")),
+            Arguments.of("Integer Exponent", "LET x = 1e5;", List.of("1:12")),
+            Arguments.of("Integer Before Period", "LET x = 2.5;\n2.5.p;", List.of("2:4")),
+            Arguments.of("Decimal Comment", "RETURN //c\n 2.5", List.of("2:5")),
+            Arguments.of("Decimal Slash", "DEF f(x, y) DO FOR x IN x <= / 2.5 DO print(x); END END", List.of("1:36", "1:53")),
+            Arguments.of("Method Arguments", "o.m(1);\nLET x = 1;", List.of("1:5")),
+            Arguments.of("Missing Parameter Comma", "DEF f(a b) DO END", List.of("1:9")),
+            Arguments.of("Object Member", "LET o = OBJECT DO x; END;", List.of("1:19")),
+            Arguments.of("Unterminated Object", "LET o = OBJECT DO", List.of("1:18")),
+            Arguments.of("Lex Error", "LET x = 1;\nLET y = 'ab';", List.of("2:9"))
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testArena(String test, String program) {
+        var source = Assertions.assertDoesNotThrow(() -> new Parser(new Lexer(program)).parseSource());
+        var arena = AstArena.of(source);
+        Assertions.assertEquals(source, arena.toSource());
+        Assertions.assertEquals(AstArena.Kind.SOURCE, arena.kind(arena.root()));
+        //nodes are in post-order, so children always precede their parent
+        for (int node = 0; node < arena.size(); node++) {
+            var kind = arena.kind(node);
+            if (kind == AstArena.Kind.BINARY || kind == AstArena.Kind.ASSIGNMENT || kind == AstArena.Kind.GROUP) {
+                for (int field = 0; field < kind.arity(); field++) {
+                    if (kind != AstArena.Kind.BINARY || field > 0) {
+                        Assertions.assertTrue(arena.field(node, field) < node);
+                    }
+                }
+            }
+        }
+    }
+
+    public static Stream<Arguments> testArena() {
+        return Stream.of(
+            Arguments.of("Empty", ""),
+            Arguments.of("Statements", """
+                LET x = 1;
+                LET y;
+                DEF f(a, b) DO
+                    RETURN a + b * (x - 2.5);
+                END
+                IF x < 2 AND y != NIL DO
+                    print("small", 'c');
+                ELSE
+                    y = o.p;
+                    o.m();
+                END
+                FOR i IN range(1, 10) DO
+                    RETURN;
+                END
+                LET o = OBJECT Name DO
+                    LET z = TRUE;
+                    DEF g() DO END
+                END;
+                """)
+        );
+    }
+
+    @Test
+    void testNodeOffset() throws LexException, ParseException {
+        var program = "LET x = 1;\nIF x DO\n  print(x + y.z);\nEND";
+        var parser = new Parser(new Lexer(program)).locating();
+        var source = parser.parseSource();
+        var lines = LineIndex.of(program);
+        var stmt = (Ast.Stmt.If) source.statements().get(1);
+        var call = (Ast.Expr.Function) ((Ast.Stmt.Expression) stmt.thenBody().getFirst()).expression();
+        var binary = (Ast.Expr.Binary) call.arguments().getFirst();
+        Assertions.assertEquals("2:1", lines.format(parser.offset(stmt)));
+        Assertions.assertEquals("3:3", lines.format(parser.offset(call)));
+        Assertions.assertEquals("3:9", lines.format(parser.offset(binary)));
+        Assertions.assertEquals("3:13", lines.format(parser.offset(binary.right())));
+        Assertions.assertEquals(-1, parser.offset(new Ast.Expr.Variable("x")));
+        var unlocated = new Parser(new Lexer(program));
+        Assertions.assertEquals(-1, unlocated.offset(unlocated.parseSource().statements().getFirst())); //not recorded unless locating
+    }
+
+    @Test
+    void testNextStmt() throws LexException, ParseException {
+        var program = "LET x = 1;\nIF x DO\n  print(x);\nEND\nx = 2;";
+        var expected = new Parser(new Lexer(program)).parseSource().statements();
+        var parser = new Parser(new Lexer(program)).locating();
+        var first = parser.parseNextStmt();
+        Assertions.assertEquals(expected.get(0), first);
+        Assertions.assertEquals(0, parser.offset(first));
+        Assertions.assertEquals(expected.get(1), parser.parseNextStmt());
+        Assertions.assertEquals(-1, parser.offset(first)); //only the last statement is tracked
+        Assertions.assertEquals(expected.get(2), parser.parseNextStmt());
+        Assertions.assertNull(parser.parseNextStmt());
+    }
+
+    @Test
+    void testNextStmtUnbounded() throws LexException, ParseException {
+        var statement = "LET x = 1;\n";
+        var read = new int[1];
+        //an input which never ends
+        Readable input = buffer -> {
+            var count = buffer.remaining();
+            for (int i = 0; i < count; i++) {
+                buffer.put(statement.charAt(read[0]++ % statement.length()));
+            }
+            return count;
+        };
+        var parser = new Parser(new Lexer(input));
+        var expected = new Ast.Stmt.Let("x", Optional.of(new Ast.Expr.Literal(new BigInteger("1"))));
+        for (int i = 0; i < 10000; i++) {
+            Assertions.assertEquals(expected, parser.parseNextStmt());
+        }
+        Assertions.assertTrue(read[0] < 10000 * statement.length() + (1 << 16), "read " + read[0]);
+    }
+
+    @Test
+    void testConstantPool() throws LexException, ParseException {
+        var program = "x + 1 + 1.0; x + 1 + 1.0; f(\"s\", 'c'); f(\"s\", 'c');";
+        var parser = new Parser(new Lexer(program));
+        var statements = parser.parseSource().statements();
+        Assertions.assertEquals(new Parser(new Lexer(program)).parseSource().statements(), statements);
+        var first = (Ast.Expr.Binary) ((Ast.Stmt.Expression) statements.get(0)).expression();
+        var second = (Ast.Expr.Binary) ((Ast.Stmt.Expression) statements.get(1)).expression();
+        var x = ((Ast.Expr.Binary) first.left()).left();
+        Assertions.assertNotSame(x, ((Ast.Expr.Binary) second.left()).left()); //nodes are distinct, values are shared
+        Assertions.assertSame(((Ast.Expr.Variable) x).name(), ((Ast.Expr.Variable) ((Ast.Expr.Binary) second.left()).left()).name());
+        Assertions.assertSame(((Ast.Expr.Literal) ((Ast.Expr.Binary) first.left()).right()).value(), ((Ast.Expr.Literal) ((Ast.Expr.Binary) second.left()).right()).value());
+        Assertions.assertSame(((Ast.Expr.Literal) first.right()).value(), ((Ast.Expr.Literal) second.right()).value());
+        Assertions.assertSame(first.operator(), second.operator());
+        var call = (Ast.Expr.Function) ((Ast.Stmt.Expression) statements.get(2)).expression();
+        var repeat = (Ast.Expr.Function) ((Ast.Stmt.Expression) statements.get(3)).expression();
+        Assertions.assertSame(call.name(), repeat.name());
+        Assertions.assertSame(((Ast.Expr.Literal) call.arguments().get(0)).value(), ((Ast.Expr.Literal) repeat.arguments().get(0)).value());
+        //x, +, 1, 1.0, f, "s", 'c'
+        Assertions.assertEquals(7, parser.constants().size());
+        //2.5 is lexed as an INTEGER before a period, which must still fail once the DECIMAL is pooled
+        var mixed = new Parser(new Lexer("LET x = 2.5;\n2.5.p;"));
+        Assertions.assertThrows(ParseException.class, mixed::parseSource);
+        var pool = new ConstantPool();
+        Assertions.assertEquals(new BigDecimal("2.5"), pool.value(Token.Type.DECIMAL, "2.5"));
+        Assertions.assertThrows(NumberFormatException.class, () -> pool.value(Token.Type.INTEGER, "2.5"));
+    }
+
+    @Test
+    void testInterning() throws LexException, ParseException {
+        var program = "a.b + f(1, x * 2); a.b + f(1, x * 2); (x * 2) - 1; x * 2.0; OBJECT DO LET y = x * 2; END;";
+        var interner = new AstInterner();
+        var parser = new Parser(new Lexer(program)).interning(interner).locating();
+        var statements = parser.parseSource().statements();
+        Assertions.assertEquals(new Parser(new Lexer(program)).parseSource().statements(), statements);
+        var first = ((Ast.Stmt.Expression) statements.get(0)).expression();
+        var second = ((Ast.Stmt.Expression) statements.get(1)).expression();
+        Assertions.assertSame(first, second);
+        Assertions.assertEquals(0, parser.offset(second)); //the first occurrence
+        var product = ((Ast.Expr.Function) ((Ast.Expr.Binary) first).right()).arguments().get(1);
+        var group = (Ast.Expr.Group) ((Ast.Expr.Binary) ((Ast.Stmt.Expression) statements.get(2)).expression()).left();
+        Assertions.assertSame(product, group.expression());
+        Assertions.assertEquals(program.indexOf("x * 2"), parser.offset(product));
+        var decimal = ((Ast.Stmt.Expression) statements.get(3)).expression();
+        Assertions.assertNotEquals(product, decimal);
+        var object = (Ast.Expr.ObjectExpr) ((Ast.Stmt.Expression) statements.get(4)).expression();
+        Assertions.assertSame(product, object.fields().getFirst().value().orElseThrow());
+        Assertions.assertEquals(interner.hash(product), interner.hash(new Ast.Expr.Binary("*", new Ast.Expr.Variable("x"), new Ast.Expr.Literal(BigInteger.TWO))));
+        Assertions.assertNotEquals(interner.hash(product), interner.hash(decimal));
+        //a, a.b, f(...), 1, x, 2, x * 2, a.b + f(...), (x * 2), (x * 2) - 1, 2.0, x * 2.0
+        Assertions.assertEquals(12, interner.size());
+    }
+
+    @Test
+    void testInterningMissingOperand() throws LexException, ParseException {
+        //the parser leaves the missing left operand of - x null
+        var program = "RETURN - x;\n- x;";
+        var interner = new AstInterner();
+        var statements = new Parser(new Lexer(program)).interning(interner).parseSource().statements();
+        Assertions.assertEquals(new Parser(new Lexer(program)).parseSource().statements(), statements);
+        var negation = ((Ast.Stmt.Return) statements.get(0)).value().orElseThrow();
+        Assertions.assertSame(negation, ((Ast.Stmt.Expression) statements.get(1)).expression());
+        Assertions.assertSame(negation, interner.intern(new Ast.Expr.Binary("-", null, interner.intern(new Ast.Expr.Variable("x")))));
+    }
+
     interface ParserMethod<T> {
         T invoke(Parser parser) throws ParseException;
     }
@@ -696,6 +1072,16 @@ final class ParserTests {
         } else {
             Assertions.assertThrows(ParseException.class, () -> method.invoke(parser));
         }
+        //Programs are also parsed directly from a TokenBuffer, which must agree.
+        if (input instanceof Input.Program program) {
+            var buffer = Assertions.assertDoesNotThrow(() -> TokenBuffer.lex(new Lexer(program.program())));
+            Parser bufferParser = new Parser(buffer);
+            if (expected != null) {
+                Assertions.assertEquals(expected, Assertions.assertDoesNotThrow(() -> method.invoke(bufferParser)));
+            } else {
+                Assertions.assertThrows(ParseException.class, () -> method.invoke(bufferParser));
+            }
+        }
     }
 
 }
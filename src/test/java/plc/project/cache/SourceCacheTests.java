@@ -0,0 +1,112 @@
+package plc.project.cache;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import plc.project.analyzer.AnalyzeException;
+import plc.project.analyzer.Analyzer;
+import plc.project.analyzer.Environment;
+import plc.project.analyzer.Scope;
+import plc.project.lexer.Lexer;
+import plc.project.parser.Parser;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+final class SourceCacheTests {
+
+    private static final String PROGRAM = """
+        LET x = 1;
+        LET y = 2.50;
+        LET s = "string";
+        DEF f() DO
+            RETURN x * 2;
+        END
+        IF x < 2 AND TRUE DO
+            print(s + x);
+        ELSE
+            print(NIL);
+        END
+        FOR i IN range(1, 10) DO
+            x = i;
+        END
+        LET o = OBJECT DO
+            LET field = 10000000000000000000000;
+            DEF method() DO field; END
+        END;
+        o.field;
+        """;
+
+    @ParameterizedTest
+    @MethodSource
+    void testCache(String test, String program, @TempDir Path directory) throws Exception {
+        var cache = new SourceCache(directory);
+        var expected = new Parser(new Lexer(program).lex()).parseSource();
+        Assertions.assertEquals(expected, cache.parse(program));
+        Assertions.assertEquals(1, entries(directory).length);
+        Assertions.assertEquals(expected, cache.parse(program));
+        Assertions.assertEquals(expected, new SourceCache(directory).parse(program));
+        try {
+            var ir = new Analyzer(new Scope(Environment.scope())).visit(expected);
+            Assertions.assertEquals(ir, cache.analyze(program));
+            Assertions.assertEquals(ir, new SourceCache(directory).analyze(program));
+        } catch (AnalyzeException exception) {
+            Assertions.assertThrows(AnalyzeException.class, () -> cache.analyze(program));
+            Assertions.assertEquals(expected, cache.parse(program));
+        }
+        Assertions.assertEquals(1, entries(directory).length);
+    }
+
+    private static Stream<Arguments> testCache() {
+        return Stream.of(
+            Arguments.of("Program", PROGRAM),
+            Arguments.of("Empty", ""),
+            Arguments.of("Analysis Error", "LET x = 1; LET x = 2;")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testEviction(String test, UnaryOperator<byte[]> corruption, @TempDir Path directory) throws Exception {
+        var cache = new SourceCache(directory);
+        var expected = cache.analyze(PROGRAM);
+        var entry = entries(directory)[0];
+        var original = Files.readAllBytes(entry);
+        Files.write(entry, corruption.apply(original.clone()));
+        Assertions.assertEquals(expected, cache.analyze(PROGRAM));
+        //the corrupt entry was replaced by a valid one
+        Assertions.assertArrayEquals(original, Files.readAllBytes(entries(directory)[0]));
+    }
+
+    private static Stream<Arguments> testEviction() {
+        return Stream.of(
+            Arguments.of("Empty", (UnaryOperator<byte[]>) bytes -> new byte[0]),
+            Arguments.of("Truncated", (UnaryOperator<byte[]>) bytes -> Arrays.copyOf(bytes, bytes.length / 2)),
+            Arguments.of("Flipped Bit", (UnaryOperator<byte[]>) bytes -> {
+                bytes[bytes.length / 2] ^= 1;
+                return bytes;
+            }),
+            Arguments.of("Trailing Bytes", (UnaryOperator<byte[]>) bytes -> Arrays.copyOf(bytes, bytes.length + 8))
+        );
+    }
+
+    @Test
+    void testVersion() {
+        //tests run from the compiled classes, which are hashed
+        Assertions.assertTrue(SourceCache.VERSION.matches("dev\\+[0-9a-f]{16}"), SourceCache.VERSION);
+    }
+
+    private static Path[] entries(Path directory) throws IOException {
+        try (var files = Files.list(directory)) {
+            return files.toArray(Path[]::new);
+        }
+    }
+
+}
@@ -0,0 +1,174 @@
+package plc.project.codec;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import plc.project.analyzer.Analyzer;
+import plc.project.analyzer.Environment;
+import plc.project.analyzer.Ir;
+import plc.project.analyzer.Scope;
+import plc.project.analyzer.Type;
+import plc.project.lexer.Lexer;
+import plc.project.parser.Ast;
+import plc.project.parser.Parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+final class TreeCodecTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testAst(String test, Ast.Source ast) throws IOException {
+        var reader = new TreeReader(new ByteArrayInputStream(encode(ast)));
+        Assertions.assertEquals(ast, reader.readAst());
+        Assertions.assertFalse(reader.hasNext());
+    }
+
+    private static Stream<Arguments> testAst() {
+        return Stream.of(
+            Arguments.of("Empty", new Ast.Source(List.of())),
+            Arguments.of("Literals", new Ast.Source(Stream.of(
+                null, true, false,
+                BigInteger.ZERO, BigInteger.valueOf(-1), BigInteger.valueOf(Long.MIN_VALUE), new BigInteger("-123456789012345678901234567890"),
+                new BigDecimal("0.0"), new BigDecimal("-1.50"), new BigDecimal("1E+400"), new BigDecimal("123456789012345678901234567890.123456789"),
+                'c', 'é', "", "string", "unicode ☃ 😀"
+            ).map(value -> (Ast.Stmt) new Ast.Stmt.Expression(new Ast.Expr.Literal(value))).toList())),
+            Arguments.of("Optional Fields", new Ast.Source(List.of(
+                new Ast.Stmt.Let("x", Optional.empty()),
+                new Ast.Stmt.Let("y", Optional.of(new Ast.Expr.Variable("x"))),
+                new Ast.Stmt.Let("z", Optional.of("Integer"), Optional.empty()),
+                new Ast.Stmt.Def("f", List.of("a", "b"), List.of(Optional.of("Integer"), Optional.empty()), Optional.of("String"), List.of()),
+                new Ast.Stmt.Return(Optional.empty()),
+                new Ast.Stmt.Expression(new Ast.Expr.Method(new Ast.Expr.Variable("o"), "m", List.of())),
+                new Ast.Stmt.Expression(new Ast.Expr.ObjectExpr(Optional.empty(), List.of(), List.of()))
+            ))),
+            Arguments.of("Program", parse(PROGRAM))
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testIr(String test, String program) throws Exception {
+        var ir = new Analyzer(new Scope(Environment.scope())).visit(parse(program));
+        var reader = new TreeReader(new ByteArrayInputStream(encode(ir)));
+        Assertions.assertEquals(ir, reader.readIr());
+        Assertions.assertFalse(reader.hasNext());
+    }
+
+    private static Stream<Arguments> testIr() {
+        return Stream.of(
+            Arguments.of("Empty", ""),
+            Arguments.of("Literals", "1; -1; 10000000000000000000000; 1.0; 1.50; \"string\"; TRUE; NIL;"),
+            Arguments.of("Functions", "DEF f() DO RETURN 1; END f(); print(f());"),
+            Arguments.of("Program", PROGRAM)
+        );
+    }
+
+    @Test
+    void testSharedObject() throws Exception {
+        var ir = new Analyzer(new Scope(Environment.scope())).visit(parse("""
+            LET o = OBJECT DO LET field = 1; END;
+            o.field;
+            o;
+            """));
+        var decoded = new TreeReader(new ByteArrayInputStream(encode(ir))).readIr();
+        Assertions.assertEquals(ir, decoded);
+        var declared = ((Ir.Stmt.Let) decoded.statements().getFirst()).type();
+        var used = ((Ir.Stmt.Expression) decoded.statements().getLast()).expression().type();
+        Assertions.assertInstanceOf(Type.Object.class, declared);
+        Assertions.assertSame(declared, used);
+        Assertions.assertSame(Type.INTEGER, ((Ir.Stmt.Expression) decoded.statements().get(1)).expression().type());
+    }
+
+    @Test
+    void testStream() throws Exception {
+        var ast = parse(PROGRAM);
+        var ir = new Analyzer(new Scope(Environment.scope())).visit(ast);
+        var bytes = new ByteArrayOutputStream();
+        try (var writer = new TreeWriter(bytes)) {
+            writer.write(ast);
+            writer.write(ir);
+            writer.write(ast);
+        }
+        var reader = new TreeReader(new ByteArrayInputStream(bytes.toByteArray()));
+        Assertions.assertTrue(reader.hasNext());
+        Assertions.assertEquals(ast, reader.readAst());
+        Assertions.assertTrue(reader.hasNext());
+        Assertions.assertEquals(ir, reader.readIr());
+        Assertions.assertTrue(reader.hasNext());
+        Assertions.assertEquals(ast, reader.readAst());
+        Assertions.assertFalse(reader.hasNext());
+    }
+
+    @Test
+    void testMalformed() throws Exception {
+        var bytes = encode(parse(PROGRAM));
+        Assertions.assertThrows(IOException.class, () -> new TreeReader(new ByteArrayInputStream(new byte[] {'P', 'L', 'C', 'C', 1})));
+        var newer = bytes.clone();
+        newer[4] = TreeWriter.VERSION + 1;
+        Assertions.assertThrows(IOException.class, () -> new TreeReader(new ByteArrayInputStream(newer)));
+        Assertions.assertThrows(IOException.class, () -> new TreeReader(new ByteArrayInputStream(bytes)).readIr());
+        for (int length = 0; length < bytes.length; length += Math.max(1, bytes.length / 50)) {
+            var truncated = Arrays.copyOf(bytes, length);
+            Assertions.assertThrows(EOFException.class, () -> new TreeReader(new ByteArrayInputStream(truncated)).readAst(), "length " + length);
+        }
+    }
+
+    private static final String PROGRAM = """
+        LET x = 1;
+        LET y = 2.50;
+        LET s = "string";
+        DEF f() DO
+            RETURN x * 2;
+        END
+        IF x < 2 AND TRUE DO
+            print(s + x);
+        ELSE
+            print(NIL);
+        END
+        FOR i IN range(1, 10) DO
+            x = i;
+        END
+        LET o = OBJECT DO
+            LET field = 10000000000000000000000;
+            DEF method() DO field; END
+        END;
+        o.field;
+        """;
+
+    private static Ast.Source parse(String program) {
+        try {
+            return new Parser(new Lexer(program).lex()).parseSource();
+        } catch (Exception exception) {
+            throw new AssertionError(exception);
+        }
+    }
+
+    private static byte[] encode(Ast.Source ast) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        try (var writer = new TreeWriter(bytes)) {
+            writer.write(ast);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encode(Ir.Source ir) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        try (var writer = new TreeWriter(bytes)) {
+            writer.write(ir);
+        }
+        return bytes.toByteArray();
+    }
+
+}
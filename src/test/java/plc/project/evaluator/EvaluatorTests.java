@@ -2,6 +2,7 @@ package plc.project.evaluator;
 
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -212,6 +213,18 @@ final class EvaluatorTests {
                     new RuntimeValue.Primitive(new BigInteger("2")),
                     new RuntimeValue.Primitive(new BigInteger("3"))
                 )
+            ),
+            Arguments.of("Iteration Scope",
+                //each iteration has a fresh scope, so f from the first is gone in the second
+                new Input.Program("""
+                    DEF f() DO log("outer"); END
+                    FOR i IN list(1, 2) DO
+                        f();
+                        DEF f() DO log(i); END
+                    END
+                    """),
+                new RuntimeValue.Primitive(null),
+                List.of(new RuntimeValue.Primitive("outer"), new RuntimeValue.Primitive("outer"))
             )
         );
     }
@@ -672,6 +685,135 @@ final class EvaluatorTests {
         );
     }
 
+    @ParameterizedTest
+    @MethodSource
+    void testResolver(String test, Input input, RuntimeValue expected, List<RuntimeValue> log) {
+        test(input, expected, log, Parser::parseSource);
+    }
+
+    private static Stream<Arguments> testResolver() {
+        return Stream.of(
+            Arguments.of("Loop",
+                new Input.Program("""
+                    LET total = 0;
+                    FOR i IN list(1, 2, 3) DO
+                        total = total + i;
+                    END
+                    log(total);
+                    """),
+                new RuntimeValue.Primitive(new BigInteger("6")),
+                List.of(new RuntimeValue.Primitive(new BigInteger("6")))
+            ),
+            Arguments.of("Caller Scope",
+                //functions are called in a child of the caller's scope
+                new Input.Program("""
+                    LET x = 1;
+                    DEF f() DO log(x); END
+                    DEF g() DO LET x = 2; f(); END
+                    g();
+                    log(x);
+                    """),
+                new RuntimeValue.Primitive(new BigInteger("1")),
+                List.of(new RuntimeValue.Primitive(new BigInteger("2")), new RuntimeValue.Primitive(new BigInteger("1")))
+            ),
+            Arguments.of("Caller Assignment",
+                //z is assigned in g's scope rather than defined, moving w's slot
+                new Input.Program("""
+                    DEF f() DO z = 3; LET w = 4; log(w); END
+                    DEF g() DO LET z = 0; f(); log(z); END
+                    g();
+                    """),
+                new RuntimeValue.Primitive(null),
+                List.of(new RuntimeValue.Primitive(new BigInteger("4")), new RuntimeValue.Primitive(new BigInteger("3")))
+            ),
+            Arguments.of("Assignment Definition",
+                new Input.Program("""
+                    DEF f() DO y = 1; log(y); END
+                    f();
+                    y = 2;
+                    log(y);
+                    """),
+                new RuntimeValue.Primitive(new BigInteger("2")),
+                List.of(new RuntimeValue.Primitive(new BigInteger("1")), new RuntimeValue.Primitive(new BigInteger("2")))
+            )
+        );
+    }
+
+    @Test
+    void testResolverSlots() throws Exception {
+        var ast = new Parser(new Lexer("""
+            LET a = 1;
+            LET b = 2;
+            FOR i IN list(a) DO
+                print(b + i);
+            END
+            DEF f(p) DO a; p; END
+            """).lex()).parseSource();
+        var scope = new Scope(Environment.scope());
+        var slots = Resolver.resolve(ast, scope);
+        var loop = (Ast.Stmt.For) ast.statements().get(2);
+        var list = (Ast.Expr.Function) loop.expression();
+        Assertions.assertEquals(new Resolver.Slot(0, 0), slots.get(list.arguments().getFirst()));
+        Assertions.assertEquals(new Resolver.Slot(1, 3), slots.get(list));
+        var print = (Ast.Expr.Function) ((Ast.Stmt.Expression) loop.body().getFirst()).expression();
+        var sum = (Ast.Expr.Binary) print.arguments().getFirst();
+        Assertions.assertEquals(new Resolver.Slot(2, 1), slots.get(print));
+        Assertions.assertEquals(new Resolver.Slot(1, 1), slots.get(sum.left()));
+        Assertions.assertEquals(new Resolver.Slot(0, 0), slots.get(sum.right()));
+        var body = ((Ast.Stmt.Def) ast.statements().get(3)).body();
+        Assertions.assertNull(slots.get(((Ast.Stmt.Expression) body.get(0)).expression())); //outside the function's scope
+        Assertions.assertEquals(new Resolver.Slot(0, 0), slots.get(((Ast.Stmt.Expression) body.get(1)).expression()));
+        //OBJECT DO DEF m(p) DO LET y = 3; log(y); END END.m(1), which the parser does not accept
+        var y = new Ast.Expr.Variable("y");
+        var method = new Ast.Stmt.Def("m", List.of("p"), List.of(
+            new Ast.Stmt.Let("y", Optional.of(new Ast.Expr.Literal(new BigInteger("3")))),
+            new Ast.Stmt.Expression(new Ast.Expr.Function("log", List.of(y)))
+        ));
+        var object = new Ast.Expr.ObjectExpr(Optional.empty(), List.of(), List.of(method));
+        var call = new Ast.Expr.Method(object, "m", List.of(new Ast.Expr.Literal(new BigInteger("1"))));
+        slots = Resolver.resolve(new Ast.Source(List.of(new Ast.Stmt.Expression(call))), scope);
+        Assertions.assertEquals(new Resolver.Slot(0, 2), slots.get(y)); //this, 0, y
+    }
+
+    @Test
+    void testIntegerArithmetic() {
+        var values = Stream.of(Long.MIN_VALUE, Long.MIN_VALUE + 1, -1L, 0L, 1L, 2L, 1024L, 1025L, 1L << 32, Long.MAX_VALUE)
+            .map(BigInteger::valueOf).toList();
+        for (var left : values) {
+            for (var right : values) {
+                for (var operator : List.of("+", "-", "*", "/", "<", "<=", ">", ">=", "==", "!=")) {
+                    var comparison = left.compareTo(right);
+                    Object expected = switch (operator) {
+                        case "+" -> left.add(right);
+                        case "-" -> left.subtract(right);
+                        case "*" -> left.multiply(right);
+                        case "/" -> right.signum() != 0 ? left.divide(right) : null;
+                        case "<" -> comparison < 0;
+                        case "<=" -> comparison <= 0;
+                        case ">" -> comparison > 0;
+                        case ">=" -> comparison >= 0;
+                        case "==" -> left.equals(right);
+                        default -> !left.equals(right);
+                    };
+                    var result = IntegerArithmetic.apply(operator, left, right);
+                    var message = left + " " + operator + " " + right;
+                    if (expected == null || expected instanceof BigInteger integer && integer.bitLength() > 63) {
+                        Assertions.assertNull(result, message); //left to BigInteger
+                    } else {
+                        Assertions.assertEquals(new RuntimeValue.Primitive(expected), result, message);
+                    }
+                }
+            }
+        }
+        Assertions.assertNull(IntegerArithmetic.apply("+", BigInteger.ONE.shiftLeft(63), BigInteger.ONE));
+        Assertions.assertNull(IntegerArithmetic.apply("AND", BigInteger.ONE, BigInteger.ONE));
+        Assertions.assertSame(IntegerArithmetic.valueOf(1024), IntegerArithmetic.valueOf(BigInteger.valueOf(1024)));
+        Assertions.assertSame(IntegerArithmetic.valueOf(true), IntegerArithmetic.apply("<", BigInteger.ONE, BigInteger.TWO));
+        //overflow falls back to the general path
+        test(new Input.Program("9223372036854775807 + 1"), new RuntimeValue.Primitive(new BigInteger("9223372036854775808")), List.of(), Parser::parseExpr);
+        test(new Input.Program("9223372036854775808 - 1"), new RuntimeValue.Primitive(BigInteger.valueOf(Long.MAX_VALUE)), List.of(), Parser::parseExpr);
+    }
+
     interface ParserMethod<T extends Ast> {
         T invoke(Parser parser) throws ParseException;
     }
@@ -5,7 +5,15 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntFunction;
 import java.util.stream.Stream;
 
 public final class LexerTests {
@@ -262,6 +270,193 @@ public final class LexerTests {
         );
     }
 
+    @ParameterizedTest
+    @MethodSource
+    void testReader(String test, String input) {
+        //Reads a single character at a time to exercise buffering across reads.
+        var reader = new FilterReader(new StringReader(input)) {
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                return super.read(buffer, offset, Math.min(length, 1));
+            }
+        };
+        var expected = Assertions.assertDoesNotThrow(() -> new Lexer(input).lex());
+        Assertions.assertEquals(expected, Assertions.assertDoesNotThrow(() -> new Lexer(reader).lex()));
+    }
+
+    public static Stream<Arguments> testReader() {
+        return Stream.of(
+            Arguments.of("Program", "LET x = 5;\nprint(\"Hello, World!\");"),
+            Arguments.of("Comment", "x //comment\ny"),
+            Arguments.of("Many Tokens", "first second ".repeat(5000)),
+            Arguments.of("Long Literal", "\"" + "a".repeat(20000) + "\"")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testUtf8(String test, String input) {
+        var bytes = ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8));
+        var expected = Assertions.assertDoesNotThrow(() -> new Lexer(input).lex());
+        Assertions.assertEquals(expected, Assertions.assertDoesNotThrow(() -> new Lexer(bytes).lex()));
+    }
+
+    public static Stream<Arguments> testUtf8() {
+        return Stream.of(
+            Arguments.of("Program", "LET x = 5;\nprint(\"Hello, World!\");"),
+            Arguments.of("Non-ASCII String", "\"h\u00e9llo \u20ac\""),
+            Arguments.of("Non-ASCII Character", "'\u00e9'"),
+            Arguments.of("Non-ASCII Operator", "x \u20ac y"),
+            Arguments.of("Surrogate Pair", "\"\ud83d\ude00\" \ud83d\ude00")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testParallel(String test, String input) {
+        //Tiny chunks split the input at (nearly) every newline.
+        List<Token> expected;
+        try {
+            expected = new Lexer(input).lex();
+        } catch (LexException exception) {
+            var actual = Assertions.assertThrows(LexException.class,
+                () -> Lexer.lexParallel(new Lexer(input), ForkJoinPool.commonPool(), 1));
+            Assertions.assertEquals(exception.getMessage(), actual.getMessage());
+            return;
+        }
+        for (int chunk : new int[] {1, 8, Integer.MAX_VALUE}) {
+            var buffer = Assertions.assertDoesNotThrow(() -> Lexer.lexParallel(new Lexer(input), ForkJoinPool.commonPool(), chunk));
+            var tokens = new ArrayList<Token>();
+            for (int i = 0; i < buffer.size(); i++) {
+                tokens.add(buffer.get(i));
+            }
+            Assertions.assertEquals(expected, tokens);
+        }
+        var bytes = ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8));
+        var buffer = Assertions.assertDoesNotThrow(() -> Lexer.lexParallel(new Lexer(bytes), ForkJoinPool.commonPool(), 1));
+        Assertions.assertEquals(expected.size(), buffer.size());
+        for (int i = 0; i < buffer.size(); i++) {
+            Assertions.assertEquals(expected.get(i), buffer.get(i));
+        }
+    }
+
+    public static Stream<Arguments> testParallel() {
+        return Stream.of(
+            Arguments.of("Empty", ""),
+            Arguments.of("Program", "LET x = 5;\nDEF f(a, b) DO\n  RETURN a + b;\nEND\nprint(\"Hello, World!\");\n"),
+            Arguments.of("Comment Before Newline", "x //comment\ny\nz //another\n\nw"),
+            Arguments.of("Slash Before Newline", "x /\ny /\n/\nz"),
+            Arguments.of("Slash In String", "\"a//b\"\nx\n"),
+            Arguments.of("Lookahead Past Newline", "1\n2.\n3e\n4"),
+            Arguments.of("Blank Lines", "\n\n\nx\n\n"),
+            Arguments.of("Non-ASCII", "\"\u00e9\"\n\u20ac\n\"\ud83d\ude00\"\nx"),
+            Arguments.of("Many Lines", "first = second;\n".repeat(1000)),
+            Arguments.of("Error In Later Chunk", "x\ny\n\"unterminated\nz"),
+            Arguments.of("Error After Comment", "x //comment\n'ab'\n")
+        );
+    }
+
+    /**
+     * Lexing time must grow linearly with input size, including for inputs
+     * designed to trigger backtracking or rescanning in literals. Each input
+     * is generated at two sizes (16x apart) and lexed from a string, a reader
+     * and UTF-8 bytes; the larger is allowed 4x slack over the linear bound,
+     * which a quadratic lexer exceeds by far more.
+     */
+    @ParameterizedTest
+    @MethodSource
+    void testLinearTime(String test, IntFunction<String> generator) {
+        var small = generator.apply(1 << 14);
+        var large = generator.apply(1 << 18);
+        lexTime(large); //warmup
+        var ratio = (double) lexTime(large) / lexTime(small);
+        Assertions.assertTrue(ratio < 16 * 4, "Lex time grew " + ratio + "x for 16x input.");
+    }
+
+    public static Stream<Arguments> testLinearTime() {
+        return Stream.of(
+            Arguments.of("Long String", (IntFunction<String>) n -> "\"" + "a".repeat(n) + "\""),
+            Arguments.of("Unterminated String", (IntFunction<String>) n -> "\"" + "a".repeat(n)),
+            Arguments.of("Escapes", (IntFunction<String>) n -> "\"" + "\\n".repeat(n / 2) + "\""),
+            Arguments.of("Alternating Escapes", (IntFunction<String>) n -> "\"" + "a\\\"".repeat(n / 3) + "\""),
+            Arguments.of("Invalid Trailing Escape", (IntFunction<String>) n -> "\"" + "a\\\\".repeat(n / 3) + "\\q\""),
+            Arguments.of("Unterminated Character", (IntFunction<String>) n -> "'" + "a".repeat(n)),
+            Arguments.of("Long Character", (IntFunction<String>) n -> "'" + "a".repeat(n) + "'"),
+            Arguments.of("Many Quotes", (IntFunction<String>) n -> "\"\" ".repeat(n / 3)),
+            Arguments.of("Long Comment", (IntFunction<String>) n -> "//" + "\"'".repeat(n / 2) + "\nx"),
+            Arguments.of("Non-ASCII String", (IntFunction<String>) n -> "\"" + "\u00e9\u20ac".repeat(n / 2) + "\"")
+        );
+    }
+
+    /**
+     * Returns the fastest of several runs lexing the input in each mode, in
+     * nanoseconds. Tokens are pulled with advance() to time only lexing.
+     */
+    private static long lexTime(String input) {
+        var bytes = input.getBytes(StandardCharsets.UTF_8);
+        var best = Long.MAX_VALUE;
+        for (int run = 0; run < 5; run++) {
+            var start = System.nanoTime();
+            for (var lexer : List.of(new Lexer(input), new Lexer(new StringReader(input)), new Lexer(ByteBuffer.wrap(bytes)))) {
+                try {
+                    while (lexer.advance() != null) {}
+                } catch (LexException ignored) {}
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testPosition(String test, String input, String expected) {
+        var exception = Assertions.assertThrows(LexException.class, () -> new Lexer(input).lex());
+        Assertions.assertEquals(expected, LineIndex.of(input).format(exception.offset()));
+        var bytes = ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8));
+        var utf8 = Assertions.assertThrows(LexException.class, () -> TokenBuffer.lex(new Lexer(bytes)));
+        Assertions.assertEquals(expected, LineIndex.of(bytes).format(utf8.offset()));
+    }
+
+    public static Stream<Arguments> testPosition() {
+        return Stream.of(
+            Arguments.of("First Token", "'ab'", "1:1"),
+            Arguments.of("After Tokens", "LET x = 'ab';", "1:9"),
+            Arguments.of("Later Line", "LET x = 1;\nLET y = 'ab';", "2:9"),
+            Arguments.of("After Comment", "//comment\n\n  \"unterminated", "3:3")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testKind(String test, String input, List<Token.Kind> expected) {
+        var buffer = Assertions.assertDoesNotThrow(() -> TokenBuffer.lex(new Lexer(input)));
+        var kinds = new ArrayList<Token.Kind>();
+        for (int i = 0; i < buffer.size(); i++) {
+            kinds.add(buffer.kind(i));
+            Assertions.assertEquals(buffer.get(i).kind(), buffer.kind(i));
+        }
+        Assertions.assertEquals(expected, kinds);
+    }
+
+    public static Stream<Arguments> testKind() {
+        return Stream.of(
+            Arguments.of("Keywords", "LET DEF IF ELSE FOR IN DO END RETURN OBJECT AND OR NIL TRUE FALSE", List.of(
+                Token.Kind.LET, Token.Kind.DEF, Token.Kind.IF, Token.Kind.ELSE, Token.Kind.FOR,
+                Token.Kind.IN, Token.Kind.DO, Token.Kind.END, Token.Kind.RETURN, Token.Kind.OBJECT,
+                Token.Kind.AND, Token.Kind.OR, Token.Kind.NIL, Token.Kind.TRUE, Token.Kind.FALSE
+            )),
+            Arguments.of("Not Keywords", "let LETS END_ \"LET\"", List.of(
+                Token.Kind.IDENTIFIER, Token.Kind.IDENTIFIER, Token.Kind.IDENTIFIER, Token.Kind.STRING
+            )),
+            Arguments.of("Operators", "= == != < <= > >= + - * . , ; ( ) (=", List.of(
+                Token.Kind.EQUALS, Token.Kind.EQUALS_EQUALS, Token.Kind.NOT_EQUALS, Token.Kind.LESS,
+                Token.Kind.LESS_EQUALS, Token.Kind.GREATER, Token.Kind.GREATER_EQUALS, Token.Kind.PLUS,
+                Token.Kind.MINUS, Token.Kind.ASTERISK, Token.Kind.PERIOD, Token.Kind.COMMA,
+                Token.Kind.SEMICOLON, Token.Kind.OPEN_PAREN, Token.Kind.CLOSE_PAREN, Token.Kind.OPERATOR
+            ))
+        );
+    }
+
     private static void test(String input, List<Token> expected, boolean success) {
         if (success) {
             var tokens = Assertions.assertDoesNotThrow(() -> new Lexer(input).lex());
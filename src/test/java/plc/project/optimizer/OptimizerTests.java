@@ -0,0 +1,239 @@
+package plc.project.optimizer;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import plc.project.analyzer.Analyzer;
+import plc.project.analyzer.Environment;
+import plc.project.analyzer.Ir;
+import plc.project.analyzer.Scope;
+import plc.project.analyzer.Type;
+import plc.project.lexer.Lexer;
+import plc.project.parser.Parser;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Tests for the optimization passes. Each program is compared to the
+ * analyzed source of the program it should be optimized to.
+ */
+final class OptimizerTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testConstantFolder(String test, String program, String expected) {
+        Assertions.assertEquals(analyze(expected), new ConstantFolder().apply(analyze(program)));
+    }
+
+    private static Stream<Arguments> testConstantFolder() {
+        return Stream.of(
+            Arguments.of("Integer", "print(60 * 60 * 24 - 1);", "print(86399);"),
+            Arguments.of("Group", "print((1 + 2) * 3);", "print(9);"),
+            Arguments.of("Big Integer",
+                "print(9223372036854775807 + 1);",
+                "print(9223372036854775808);"
+            ),
+            Arguments.of("String",
+                "print(\"prefix\" + \"x\" + 1); print(1.50 + \"s\"); print(\"s\" + TRUE);",
+                "print(\"prefixx1\"); print(\"1.50s\"); print(\"strue\");"
+            ),
+            Arguments.of("Comparison",
+                "print(1 < 2 AND 2.0 >= 3.0); print(1.0 == 1.00 OR 2 != 2);",
+                "print(FALSE); print(FALSE);"
+            ),
+            Arguments.of("Unfoldable", "print(\"a\" < \"b\"); print(variable + 1);", "print(\"a\" < \"b\"); print(variable + 1);"),
+            Arguments.of("Propagation",
+                "LET x = 60 * 60; LET y = x * 24; print(y + x);",
+                "LET x = 3600; LET y = 86400; print(90000);"
+            ),
+            Arguments.of("Reassigned",
+                "LET x = 1; x = 2; print(x + 1);",
+                "LET x = 1; x = 2; print(x + 1);"
+            ),
+            Arguments.of("Function",
+                "LET x = 1; DEF f() DO RETURN x + 1; END print(x + 1);",
+                "LET x = 1; DEF f() DO RETURN x + 1; END print(2);"
+            ),
+            Arguments.of("Shadowing",
+                "LET x = 1; FOR i IN range(1, 3) DO LET x = i; print(x); END print(x + 1);",
+                "LET x = 1; FOR i IN range(1, 3) DO LET x = i; print(x); END print(2);"
+            ),
+            Arguments.of("If",
+                "IF 1 < 2 DO print(1); ELSE print(2); END IF FALSE DO print(3); END IF 1 > 2 DO print(4); ELSE LET y = 5; END",
+                "print(1); IF FALSE DO ELSE LET y = 5; END"
+            )
+        );
+    }
+
+    @Test
+    void testConstantFolderDivision() {
+        //the lexer has no standalone slash, so these are built directly
+        var source = new Ir.Source(Stream.of(
+            divide(new BigDecimal("3.5"), new BigDecimal("2.0")),
+            divide(BigInteger.valueOf(-7), BigInteger.TWO),
+            divide(BigInteger.ONE, BigInteger.ZERO),
+            divide(BigDecimal.ONE, new BigDecimal("0.0"))
+        ).map(expr -> (Ir.Stmt) new Ir.Stmt.Expression(expr)).toList());
+        var folded = new ConstantFolder().apply(source).statements();
+        Assertions.assertEquals(new Ir.Expr.Literal(new BigDecimal("1.8"), Type.DECIMAL), ((Ir.Stmt.Expression) folded.get(0)).expression());
+        Assertions.assertEquals(new Ir.Expr.Literal(BigInteger.valueOf(-3), Type.INTEGER), ((Ir.Stmt.Expression) folded.get(1)).expression());
+        Assertions.assertEquals(source.statements().subList(2, 4), folded.subList(2, 4)); //division by zero fails at runtime
+    }
+
+    private static Ir.Expr divide(Object left, Object right) {
+        var type = left instanceof BigInteger ? Type.INTEGER : Type.DECIMAL;
+        return new Ir.Expr.Binary("/", new Ir.Expr.Literal(left, type), new Ir.Expr.Literal(right, type), type);
+    }
+
+    @Test
+    void testConstantFolderCounts() {
+        var folder = new ConstantFolder();
+        folder.apply(analyze("LET x = (1 + 2); IF x > 2 DO print(x * 2); END"));
+        //1 + 2, (3), x > 2 and x * 2 fold, with x propagated twice
+        Assertions.assertEquals(Map.of("folded", 4, "propagated", 2, "branches", 1), folder.changes());
+    }
+
+    @Test
+    void testConstantFolderKeptBranch() {
+        //the IF is kept since f is declared in its scope, which is not a change
+        var source = analyze("IF TRUE DO DEF f() DO print(1); END f(); END");
+        var result = new PassManager(PassManager.Level.O2).run(source);
+        Assertions.assertEquals(source, result.source());
+        Assertions.assertEquals(List.of(1, 1), result.reports().stream().map(PassManager.Report::round).toList());
+        Assertions.assertEquals(Map.of(), result.reports().getFirst().changes());
+        var folder = new ConstantFolder();
+        folder.apply(analyze("IF FALSE DO print(1); ELSE DEF f() DO END END"));
+        Assertions.assertEquals(Map.of("branches", 1), folder.changes());
+    }
+
+    @Test
+    void testFold() {
+        Assertions.assertEquals(new BigDecimal("0.33"), ConstantFolder.fold("/", new BigDecimal("1.00"), new BigDecimal("3")));
+        Assertions.assertEquals(new BigDecimal("0.2"), ConstantFolder.fold("/", new BigDecimal("0.5"), new BigDecimal("2")));
+        Assertions.assertEquals(new BigDecimal("0.4"), ConstantFolder.fold("/", new BigDecimal("0.7"), new BigDecimal("2")));
+        Assertions.assertEquals(BigInteger.valueOf(-2), ConstantFolder.fold("/", BigInteger.valueOf(-7), BigInteger.valueOf(3)));
+        Assertions.assertNull(ConstantFolder.fold("+", true, "s"));
+        Assertions.assertNull(ConstantFolder.fold("+", "s", null));
+        Assertions.assertNull(ConstantFolder.fold("==", "s", "s"));
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testDeadCodeEliminator(String test, String program, String expected) {
+        Assertions.assertEquals(analyze(expected), new DeadCodeEliminator().apply(analyze(program)));
+    }
+
+    private static Stream<Arguments> testDeadCodeEliminator() {
+        return Stream.of(
+            Arguments.of("Used", "LET x = 1; print(x);", "LET x = 1; print(x);"),
+            Arguments.of("Unused Let", "LET x = 1; LET y = x + 1; LET z; print(2);", "print(2);"),
+            Arguments.of("Impure Let", "LET x = print(1); LET y = range(1, 2); print(2);", "print(1); range(1, 2); print(2);"),
+            Arguments.of("Unused Def",
+                "DEF f() DO print(1); END DEF g() DO f(); END DEF h() DO h(); END print(2);",
+                "print(2);"
+            ),
+            Arguments.of("Dynamic Scope",
+                "LET x = 1; LET y = 2; DEF f() DO print(x); END f();",
+                "LET x = 1; DEF f() DO print(x); END f();"
+            ),
+            Arguments.of("Assigned", "LET x = 1; DEF f() DO x = 2; END f();", "LET x = 1; DEF f() DO x = 2; END f();"),
+            Arguments.of("Unreachable",
+                "DEF f() DO RETURN 1; print(2); END print(f());",
+                "DEF f() DO RETURN 1; END print(f());"
+            ),
+            Arguments.of("Returning If",
+                "LET x = 1; DEF f() DO IF x > 0 DO RETURN 1; ELSE RETURN 2; END print(3); END print(f());",
+                "LET x = 1; DEF f() DO IF x > 0 DO RETURN 1; ELSE RETURN 2; END END print(f());"
+            ),
+            Arguments.of("Empty If",
+                "LET x = 1; IF x > 0 DO LET y = 2; END print(x);",
+                "LET x = 1; print(x);"
+            ),
+            Arguments.of("Empty For",
+                "FOR i IN range(1, 3) DO LET y = i; END",
+                "range(1, 3);"
+            ),
+            Arguments.of("Object",
+                "LET o = OBJECT DO LET a = 1; LET b = 2; END; print(o.a);",
+                "LET o = OBJECT DO LET a = 1; LET b = 2; END; print(o.a);"
+            )
+        );
+    }
+
+    @Test
+    void testDeadCodeEliminatorCounts() {
+        var eliminator = new DeadCodeEliminator();
+        eliminator.apply(analyze("LET x = 1; DEF f() DO RETURN 1; print(1); print(2); END IF TRUE DO LET y = 1; END print(f());"));
+        //x and y are unused, which empties the IF
+        Assertions.assertEquals(Map.of("definitions", 2, "unreachable", 2, "branches", 1), eliminator.changes());
+        eliminator.apply(analyze("print(1);"));
+        Assertions.assertEquals(Map.of(), eliminator.changes());
+    }
+
+    @Test
+    void testPassManager() {
+        var source = analyze("LET x = 60 * 60; print(x * 24);");
+        var none = new PassManager(PassManager.Level.O0).run(source);
+        Assertions.assertSame(source, none.source());
+        Assertions.assertEquals(List.of(), none.reports());
+        var result = new PassManager(PassManager.Level.O1).run(source);
+        Assertions.assertEquals(analyze("print(86400);"), result.source());
+        Assertions.assertEquals(List.of("constant-folding", "dead-code"), result.reports().stream().map(PassManager.Report::pass).toList());
+        var report = result.reports().getFirst();
+        //LET, *, 60, 60, statement, print, *, x, 24
+        Assertions.assertEquals(9, report.before());
+        Assertions.assertEquals(5, report.after());
+        Assertions.assertEquals(Map.of("folded", 2, "propagated", 1), report.changes());
+        //x is unused once propagated
+        Assertions.assertEquals(3, result.reports().getLast().after());
+        Assertions.assertEquals(Map.of("definitions", 1), result.reports().getLast().changes());
+        Assertions.assertEquals(result.reports().stream().mapToLong(PassManager.Report::nanos).sum(), result.nanos());
+    }
+
+    @Test
+    void testPassManagerRounds() {
+        //removes one statement per round, to check rounds stop once nothing changes
+        var pass = new Pass() {
+            private int removed;
+            public String name() { return "pop"; }
+            public Ir.Source apply(Ir.Source source) {
+                removed = source.statements().isEmpty() ? 0 : 1;
+                return new Ir.Source(source.statements().subList(removed, source.statements().size()));
+            }
+            public Map<String, Integer> changes() {
+                return removed == 0 ? Map.of() : Map.of("removed", removed);
+            }
+        };
+        var source = analyze("print(1); print(2); print(3);");
+        var result = new PassManager(PassManager.Level.O2, List.of(pass)).run(source);
+        Assertions.assertEquals(List.of(), result.source().statements());
+        Assertions.assertEquals(List.of(1, 2, 3, 4), result.reports().stream().map(PassManager.Report::round).toList());
+        Assertions.assertFalse(result.reports().getLast().changed());
+        var capped = new PassManager(PassManager.Level.O2, List.of(pass)).run(analyze("print(1);".repeat(20)));
+        Assertions.assertEquals(PassManager.MAX_ROUNDS, capped.reports().size());
+        Assertions.assertEquals(1, new PassManager(PassManager.Level.O1, List.of(pass)).run(source).reports().size());
+        //always reports a change, but returns its input
+        var miscounting = new Pass() {
+            public String name() { return "miscounting"; }
+            public Ir.Source apply(Ir.Source source) { return new Ir.Source(List.copyOf(source.statements())); }
+            public Map<String, Integer> changes() { return Map.of("changed", 1); }
+        };
+        var idle = new PassManager(PassManager.Level.O2, List.of(miscounting)).run(source);
+        Assertions.assertEquals(List.of(1), idle.reports().stream().map(PassManager.Report::round).toList());
+    }
+
+    private static Ir.Source analyze(String program) {
+        try {
+            return new Analyzer(new Scope(Environment.scope())).visit(new Parser(new Lexer(program).lex()).parseSource());
+        } catch (Exception exception) {
+            throw new AssertionError(exception);
+        }
+    }
+
+}